@@ -0,0 +1,87 @@
+package com.liang.anim;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 收集基准测试结果并输出为JSON，便于不同版本之间对比：
+ * <pre>
+ * {"environment": {...}, "results": [{"benchmark": "...", "unit": "...", "score": 平均值, "samples": 样本数,
+ *   "min": ..., "p50": ..., "p90": ..., "p99": ..., "max": ...}]}
+ * </pre>
+ */
+final class BenchmarkResults {
+    private final List<String> mResults = new ArrayList<>();
+
+    /**
+     * 记录一组样本
+     */
+    synchronized void add(String benchmark, String unit, double[] samples) {
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        double sum = 0;
+        for (double sample : sorted) {
+            sum += sample;
+        }
+        mResults.add(String.format(Locale.US, "{\"benchmark\": \"%s\", \"unit\": \"%s\", \"score\": %.3f, "
+                        + "\"samples\": %d, \"min\": %.3f, \"p50\": %.3f, \"p90\": %.3f, \"p99\": %.3f, \"max\": %.3f}",
+                benchmark, unit, sorted.length == 0 ? 0 : sum / sorted.length, sorted.length,
+                percentile(sorted, 0), percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                percentile(sorted, 100)));
+        System.out.println(mResults.get(mResults.size() - 1));
+    }
+
+    /**
+     * 记录单个值
+     */
+    synchronized void add(String benchmark, String unit, double score) {
+        add(benchmark, unit, new double[]{score});
+    }
+
+    /**
+     * 写入结果文件，每个测试结束后调用，中途失败时已完成的结果仍然保留
+     *
+     * @param path 结果文件路径，null时只输出到控制台
+     */
+    synchronized void write(String path) throws IOException {
+        if (path == null) {
+            return;
+        }
+        File file = new File(path);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\n  \"environment\": {\"java\": \"").append(System.getProperty("java.version"))
+                .append("\", \"os\": \"").append(System.getProperty("os.name")).append(' ')
+                .append(System.getProperty("os.arch")).append("\", \"processors\": ")
+                .append(Runtime.getRuntime().availableProcessors()).append(", \"timestamp\": ")
+                .append(System.currentTimeMillis()).append("},\n  \"results\": [\n");
+        for (int i = 0; i < mResults.size(); i++) {
+            builder.append("    ").append(mResults.get(i)).append(i < mResults.size() - 1 ? ",\n" : "\n");
+        }
+        builder.append("  ]\n}\n");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(builder.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static double percentile(double[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,318 @@
+package com.liang.anim;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.PixelFormat;
+import android.util.AttributeSet;
+
+import com.liang.anim.packer.RawFramePacker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在Robolectric中运行帧管线的基准测试，使用示例中的refresh序列帧，
+ * 测量缓存、调度和播放帧率，结果可以在不同版本之间对比。
+ * Robolectric的Bitmap为模拟实现，不包含真实的解码和绘制耗时，解码耗时以JMH的结果为准。
+ * 只在指定-Pbenchmark时运行，结果写入benchmark.output指定的文件
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FramePipelineBenchmark {
+    private static final String ASSETS_FOLDER = "refresh";
+    private static final int TARGET_SIZE = 360;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURE_ROUNDS = 5;
+    private static final int SCHEDULER_POSTS = 2000;
+    private static final int SCHEDULER_LANES = 4;
+    private static final long PLAYBACK_TIMEOUT_MS = 60000;
+    private static final BenchmarkResults sResults = new BenchmarkResults();
+
+    private Context mContext;
+    private String[] mFrames;
+    private BitmapPool mBitmapPool;
+    private File mRawFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = RuntimeEnvironment.application;
+        mFrames = mContext.getAssets().list(ASSETS_FOLDER);
+        assertTrue("missing assets/" + ASSETS_FOLDER, mFrames != null && mFrames.length > 0);
+        Arrays.sort(mFrames);
+        mBitmapPool = new BitmapPool(64 * 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (mRawFile != null && !mRawFile.delete()) {
+            mRawFile.deleteOnExit();
+        }
+        mBitmapPool.clear();
+        sResults.write(System.getProperty("benchmark.output"));
+    }
+
+    /**
+     * Assets中webp帧按原图尺寸解码，复用池开启时的单帧耗时
+     */
+    @Test
+    public void decodeAssets() throws IOException {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            decodeAssetsRound();
+        }
+        double[] samples = new double[MEASURE_ROUNDS * mFrames.length];
+        for (int round = 0; round < MEASURE_ROUNDS; round++) {
+            long[] times = decodeAssetsRound();
+            for (int i = 0; i < times.length; i++) {
+                samples[round * mFrames.length + i] = times[i] / 1000.0;
+            }
+        }
+        sResults.add("decode.assets.webp", "us/frame", samples);
+        sResults.add("decode.assets.pool_hit_ratio", "ratio", hitRatio(mBitmapPool));
+    }
+
+    /**
+     * 预解码容器的单帧耗时，像素从内存映射的文件直接复制到复用的Bitmap
+     */
+    @Test
+    public void decodeRawContainer() throws IOException {
+        RawFrameContainer container = RawFrameContainer.open(packRawFile());
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int index = 0; index < container.getFrameCount(); index++) {
+                mBitmapPool.put(container.decode(index, mBitmapPool));
+            }
+        }
+        double[] samples = new double[MEASURE_ROUNDS * container.getFrameCount()];
+        for (int round = 0; round < MEASURE_ROUNDS; round++) {
+            for (int index = 0; index < container.getFrameCount(); index++) {
+                long start = System.nanoTime();
+                Bitmap bitmap = container.decode(index, mBitmapPool);
+                samples[round * container.getFrameCount() + index] = (System.nanoTime() - start) / 1000.0;
+                mBitmapPool.put(bitmap);
+            }
+        }
+        sResults.add("decode.raw.sqf", "us/frame", samples);
+    }
+
+    /**
+     * 帧缓存命中时取出并归还一帧的耗时
+     */
+    @Test
+    public void frameCacheHit() throws IOException {
+        FrameCache frameCache = new FrameCache(256 * 1024 * 1024, mBitmapPool);
+        FrameCache.Key[] keys = new FrameCache.Key[mFrames.length];
+        for (int i = 0; i < mFrames.length; i++) {
+            keys[i] = FrameCache.Key.assets(ASSETS_FOLDER + "/" + mFrames[i], 0, 0, Bitmap.Config.ARGB_8888);
+            frameCache.release(frameCache.put(keys[i], decodeAssets(i)));
+        }
+        int iterations = 100000;
+        double[] samples = new double[MEASURE_ROUNDS];
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                frameCache.release(frameCache.acquire(keys[i % keys.length]));
+            }
+            if (round >= WARMUP_ROUNDS) {
+                samples[round - WARMUP_ROUNDS] = (System.nanoTime() - start) / (double) iterations;
+            }
+        }
+        assertFalse(frameCache.getHitCount() == 0);
+        sResults.add("cache.hit", "ns/op", samples);
+        frameCache.clear();
+    }
+
+    /**
+     * 共享线程池中串行队列从提交到开始执行的延迟，多个队列同时提交，模拟多个控件同时播放
+     */
+    @Test
+    public void schedulerLatency() throws InterruptedException {
+        FrameScheduler.Lane[] lanes = new FrameScheduler.Lane[SCHEDULER_LANES];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = FrameScheduler.getInstance().newLane();
+        }
+        final double[] samples = new double[SCHEDULER_POSTS * lanes.length];
+        for (int post = 0; post < SCHEDULER_POSTS; post++) {
+            final CountDownLatch latch = new CountDownLatch(lanes.length);
+            for (int i = 0; i < lanes.length; i++) {
+                final int sample = post * lanes.length + i;
+                final long postTime = System.nanoTime();
+                lanes[i].post(new Runnable() {
+                    @Override
+                    public void run() {
+                        samples[sample] = (System.nanoTime() - postTime) / 1000.0;
+                        latch.countDown();
+                    }
+                });
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+        for (FrameScheduler.Lane lane : lanes) {
+            lane.quit();
+        }
+        // 去掉线程池启动阶段的样本
+        sResults.add("scheduler.lane_latency", "us", Arrays.copyOfRange(samples, lanes.length * 100,
+                samples.length));
+    }
+
+    /**
+     * 控件完整播放一遍的帧率和每帧分配的内存，不使用帧缓存时每帧都需要解码
+     */
+    @Test
+    public void playbackUncached() throws InterruptedException {
+        measurePlayback("playback.assets.uncached", new FrameCache(0, mBitmapPool), null);
+    }
+
+    /**
+     * 帧缓存足够容纳整个序列时，第一遍之后不再解码
+     */
+    @Test
+    public void playbackCached() throws InterruptedException {
+        measurePlayback("playback.assets.cached", new FrameCache(256 * 1024 * 1024, mBitmapPool), null);
+    }
+
+    /**
+     * 播放预解码容器
+     */
+    @Test
+    public void playbackRawContainer() throws IOException, InterruptedException {
+        measurePlayback("playback.raw.uncached", new FrameCache(0, mBitmapPool), packRawFile());
+    }
+
+    private void measurePlayback(String benchmark, FrameCache frameCache, File rawFile)
+            throws InterruptedException {
+        AttributeSet attrs = Robolectric.buildAttributeSet()
+                .addAttribute(R.attr.duration, "0")
+                .addAttribute(R.attr.clockMode, "delayed")
+                .build();
+        SequenceFrameView view = new SequenceFrameView(mContext, attrs);
+        view.setBitmapPool(mBitmapPool);
+        view.setFrameCache(frameCache);
+        if (rawFile != null) {
+            view.setAnimRawFile(rawFile);
+        } else {
+            view.setAnimAssets(ASSETS_FOLDER);
+        }
+        view.surfaceChanged(view.getHolder(), PixelFormat.RGBA_8888, TARGET_SIZE, TARGET_SIZE);
+        double[] fps = new double[MEASURE_ROUNDS];
+        double[] allocations = new double[MEASURE_ROUNDS];
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+            Map<Long, Long> allocated = getAllocatedBytes();
+            long start = System.nanoTime();
+            view.reStart();
+            awaitStopped(view);
+            long elapsed = System.nanoTime() - start;
+            long bytes = getAllocatedBytesSince(allocated);
+            if (round >= WARMUP_ROUNDS) {
+                fps[round - WARMUP_ROUNDS] = mFrames.length * 1e9 / elapsed;
+                allocations[round - WARMUP_ROUNDS] = bytes / (double) mFrames.length;
+            }
+        }
+        view.surfaceDestroyed(view.getHolder());
+        frameCache.clear();
+        sResults.add(benchmark + ".fps", "frames/s", fps);
+        sResults.add(benchmark + ".allocation", "bytes/frame", allocations);
+    }
+
+    private static void awaitStopped(SequenceFrameView view) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + PLAYBACK_TIMEOUT_MS;
+        while (view.isRunning()) {
+            assertTrue("playback timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private long[] decodeAssetsRound() throws IOException {
+        long[] times = new long[mFrames.length];
+        for (int i = 0; i < mFrames.length; i++) {
+            long start = System.nanoTime();
+            Bitmap bitmap = decodeAssets(i);
+            times[i] = System.nanoTime() - start;
+            mBitmapPool.put(bitmap);
+        }
+        return times;
+    }
+
+    /**
+     * 与SequenceFrameView相同的解码方式：先取尺寸，再从复用池中取inBitmap解码
+     */
+    private Bitmap decodeAssets(int index) throws IOException {
+        String path = ASSETS_FOLDER + "/" + mFrames[index];
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeAssets(path, options);
+        options.inJustDecodeBounds = false;
+        mBitmapPool.prepare(options);
+        return decodeAssets(path, options);
+    }
+
+    private Bitmap decodeAssets(String path, BitmapFactory.Options options) throws IOException {
+        InputStream inputStream = mContext.getAssets().open(path);
+        try {
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * 用anim_packer把refresh序列帧打包为预解码容器
+     */
+    private File packRawFile() throws IOException {
+        if (mRawFile == null) {
+            File folder = new File(System.getProperty("benchmark.assets", "../app/src/main/assets"), ASSETS_FOLDER);
+            mRawFile = File.createTempFile(ASSETS_FOLDER, RawFrameContainer.FILE_EXTENSION);
+            RawFramePacker.pack(folder, mRawFile, false, 0);
+        }
+        return mRawFile;
+    }
+
+    private static double hitRatio(BitmapPool bitmapPool) {
+        int total = bitmapPool.getHitCount() + bitmapPool.getMissCount();
+        return total == 0 ? 0 : bitmapPool.getHitCount() / (double) total;
+    }
+
+    /**
+     * 所有线程已分配的字节数，解码和绘制在线程池中进行，只统计当前线程会漏掉大部分分配
+     */
+    private static Map<Long, Long> getAllocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] ids = threadMXBean.getAllThreadIds();
+        long[] bytes = threadMXBean.getThreadAllocatedBytes(ids);
+        Map<Long, Long> allocated = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            allocated.put(ids[i], bytes[i]);
+        }
+        return allocated;
+    }
+
+    private static long getAllocatedBytesSince(Map<Long, Long> before) {
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : getAllocatedBytes().entrySet()) {
+            Long previous = before.get(entry.getKey());
+            if (entry.getValue() > 0) {
+                total += entry.getValue() - (previous == null ? 0 : Math.max(0, previous));
+            }
+        }
+        return total;
+    }
+}
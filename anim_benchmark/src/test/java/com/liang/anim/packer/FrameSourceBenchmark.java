@@ -0,0 +1,97 @@
+package com.liang.anim.packer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同帧来源在JVM上的单帧读取耗时：ImageIO解码refresh中的webp帧，以及从内存映射的预解码容器中复制一帧像素，
+ * 后者与RawFrameContainer.decode的内存访问相同，只是目标为直接内存而不是Bitmap
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameSourceBenchmark {
+    private List<File> mFrames;
+    private File mRawFile;
+    private MappedByteBuffer mRawBuffer;
+    private long[] mOffsets;
+    private int mFrameSize;
+    private ByteBuffer mTarget;
+    private int mIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ImageIO.setUseCache(false);
+        File folder = new File(System.getProperty("benchmark.assets", "../app/src/main/assets"), "refresh");
+        mFrames = FrameFiles.list(folder);
+        mRawFile = File.createTempFile("refresh", ".sqf");
+        RawFramePacker.pack(folder, mRawFile, false, 0);
+        FileInputStream inputStream = new FileInputStream(mRawFile);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            mRawBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            inputStream.close();
+        }
+        mRawBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        int width = mRawBuffer.getInt(8);
+        int height = mRawBuffer.getInt(12);
+        int frameCount = mRawBuffer.getInt(20);
+        mFrameSize = width * height * 4;
+        mOffsets = new long[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            mOffsets[i] = mRawBuffer.getLong(RawFramePacker.HEADER_SIZE + 8 * i);
+        }
+        mTarget = ByteBuffer.allocateDirect(mFrameSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (!mRawFile.delete()) {
+            mRawFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public BufferedImage decodeWebp() throws IOException {
+        mIndex = (mIndex + 1) % mFrames.size();
+        return ImageIO.read(mFrames.get(mIndex));
+    }
+
+    @Benchmark
+    public ByteBuffer copyRawFrame() {
+        mIndex = (mIndex + 1) % mOffsets.length;
+        ByteBuffer source = mRawBuffer.duplicate();
+        int offset = (int) mOffsets[mIndex];
+        source.limit(offset + mFrameSize);
+        source.position(offset);
+        mTarget.clear();
+        mTarget.put(source);
+        return mTarget;
+    }
+}
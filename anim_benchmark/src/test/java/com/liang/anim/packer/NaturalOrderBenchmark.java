@@ -0,0 +1,53 @@
+package com.liang.anim.packer;
+
+import com.liang.anim.NaturalOrder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按文件名自然排序一个序列的耗时，帧数较多的序列每次加载都需要排序
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NaturalOrderBenchmark {
+    @Param({"73", "1000"})
+    public int frameCount;
+
+    private List<String> mNames;
+
+    @Setup
+    public void setUp() {
+        mNames = new ArrayList<>();
+        for (int i = 0; i < frameCount; i++) {
+            mNames.add("loading_" + i + ".webp");
+        }
+        Collections.shuffle(mNames, new Random(frameCount));
+    }
+
+    @Benchmark
+    public List<String> sort() {
+        List<String> names = new ArrayList<>(mNames);
+        Collections.sort(names, NaturalOrder.getInstance());
+        return names;
+    }
+}
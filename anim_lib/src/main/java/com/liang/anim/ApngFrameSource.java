@@ -0,0 +1,557 @@
+package com.liang.anim;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 单个APNG文件中的序列帧，不需要拆成逐帧图片。打开时只扫描一次数据块头建立每帧的索引，
+ * 解码时只读取该帧的数据块，拼成独立的PNG交给BitmapFactory解码，再按帧的dispose_op和blend_op合成到复用的整帧画布上，
+ * 内存占用与帧数无关。按顺序播放时每帧只合成一次，跳转时从最近的完整帧开始重新合成。
+ * 帧时长使用文件中的delay，循环次数由控件决定。没有acTL的普通PNG按单帧处理
+ */
+public class ApngFrameSource implements FrameSource, Closeable {
+    private static final String TAG = "ApngFrameSource";
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] IEND = {0, 0, 0, 0, 'I', 'E', 'N', 'D', (byte) 0xae, 0x42, 0x60, (byte) 0x82};
+    private static final int TYPE_IHDR = 0x49484452;
+    private static final int TYPE_ACTL = 0x6163544c;
+    private static final int TYPE_FCTL = 0x6663544c;
+    private static final int TYPE_IDAT = 0x49444154;
+    private static final int TYPE_FDAT = 0x66644154;
+    private static final int TYPE_IEND = 0x49454e44;
+    private static final int IHDR_SIZE = 13;
+    private static final int FCTL_SIZE = 26;
+    private static final int DISPOSE_NONE = 0;
+    private static final int DISPOSE_BACKGROUND = 1;
+    private static final int DISPOSE_PREVIOUS = 2;
+    private static final int BLEND_SOURCE = 0;
+
+    private final String mName;
+    private final String mKeyPrefix;
+    private final Closeable mCloseable;
+    private final FileChannel mChannel;
+    private final long mBaseOffset;
+    private final int mWidth;
+    private final int mHeight;
+    /**
+     * IHDR中宽高之后的位深、颜色类型等5个字节
+     */
+    private final byte[] mHeaderTail;
+    /**
+     * 第一帧之前的PLTE、tRNS等数据块，原样拼入每一帧
+     */
+    private final byte[] mSharedChunks;
+    private final Frame[] mFrames;
+    /**
+     * 每帧向前最近的完整帧，跳转时从该帧开始合成
+     */
+    private final int[] mKeyFrames;
+    private final CRC32 mCrc = new CRC32();
+    private final Rect mRect = new Rect();
+    private final Rect mDstRect = new Rect();
+    private final Paint mScalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    /**
+     * 以下字段只在持有对象锁时访问
+     */
+    private byte[] mPngBuffer = new byte[0];
+    private Bitmap mCanvasBitmap;
+    private Canvas mCanvas;
+    private int mComposedIndex = -1;
+    private Bitmap mSavedBitmap;
+
+    private ApngFrameSource(String name, String keyPrefix, Closeable closeable, FileChannel channel, long baseOffset,
+                            long length) throws IOException {
+        mName = name;
+        mKeyPrefix = keyPrefix;
+        mCloseable = closeable;
+        mChannel = channel;
+        mBaseOffset = baseOffset;
+        ByteBuffer signature = read(0, SIGNATURE.length);
+        for (byte b : SIGNATURE) {
+            if (signature.get() != b) {
+                throw new IOException(name + " is not a png file");
+            }
+        }
+        ByteBuffer header = read(SIGNATURE.length, 8 + IHDR_SIZE);
+        if (header.getInt(4) != TYPE_IHDR) {
+            throw new IOException(name + ": IHDR not found");
+        }
+        mWidth = header.getInt(8);
+        mHeight = header.getInt(12);
+        mHeaderTail = new byte[IHDR_SIZE - 8];
+        header.position(16);
+        header.get(mHeaderTail);
+        if (mWidth <= 0 || mHeight <= 0) {
+            throw new IOException(name + ": corrupted IHDR");
+        }
+        List<Frame> frames = new ArrayList<>();
+        List<byte[]> sharedChunks = new ArrayList<>();
+        boolean isAnimated = false;
+        boolean isDataStarted = false;
+        Frame frame = null;
+        long position = SIGNATURE.length + 12 + IHDR_SIZE;
+        while (position + 12 <= length) {
+            ByteBuffer chunk = read(position, 8);
+            int chunkLength = chunk.getInt(0);
+            int type = chunk.getInt(4);
+            long dataOffset = position + 8;
+            if (chunkLength < 0 || dataOffset + chunkLength + 4 > length) {
+                throw new IOException(name + ": corrupted chunk at " + position);
+            }
+            if (type == TYPE_IEND) {
+                break;
+            } else if (type == TYPE_ACTL) {
+                isAnimated = true;
+            } else if (type == TYPE_FCTL) {
+                if (chunkLength < FCTL_SIZE) {
+                    throw new IOException(name + ": corrupted fcTL");
+                }
+                frame = new Frame(read(dataOffset, FCTL_SIZE), mWidth, mHeight);
+                frames.add(frame);
+            } else if (type == TYPE_IDAT) {
+                isDataStarted = true;
+                if (!isAnimated) {
+                    if (frame == null) {
+                        frame = new Frame(mWidth, mHeight);
+                        frames.add(frame);
+                    }
+                    frame.addData(dataOffset, chunkLength);
+                } else if (frame != null) {
+                    // fcTL在IDAT之前时默认图片是第一帧，否则默认图片不参与动画
+                    frame.addData(dataOffset, chunkLength);
+                }
+            } else if (type == TYPE_FDAT) {
+                if (frame != null && chunkLength > 4) {
+                    frame.addData(dataOffset + 4, chunkLength - 4);
+                }
+            } else if (!isDataStarted) {
+                sharedChunks.add(read(position, 12 + chunkLength).array());
+            }
+            position = dataOffset + chunkLength + 4;
+        }
+        int sharedSize = 0;
+        for (byte[] sharedChunk : sharedChunks) {
+            sharedSize += sharedChunk.length;
+        }
+        mSharedChunks = new byte[sharedSize];
+        int offset = 0;
+        for (byte[] sharedChunk : sharedChunks) {
+            System.arraycopy(sharedChunk, 0, mSharedChunks, offset, sharedChunk.length);
+            offset += sharedChunk.length;
+        }
+        List<Frame> validFrames = new ArrayList<>();
+        for (Frame item : frames) {
+            if (item.mDataSize > 0) {
+                validFrames.add(item);
+            }
+        }
+        if (validFrames.isEmpty()) {
+            throw new IOException(name + ": no frame data");
+        }
+        mFrames = validFrames.toArray(new Frame[validFrames.size()]);
+        mKeyFrames = new int[mFrames.length];
+        for (int i = 1; i < mFrames.length; i++) {
+            Frame previous = mFrames[i - 1];
+            boolean isCleared = previous.mDispose == DISPOSE_BACKGROUND && previous.isFullFrame(mWidth, mHeight);
+            // 整帧覆盖但之后需要恢复之前内容的帧仍依赖之前的帧
+            boolean isReplaced = mFrames[i].mBlend == BLEND_SOURCE && mFrames[i].mDispose != DISPOSE_PREVIOUS
+                    && mFrames[i].isFullFrame(mWidth, mHeight);
+            mKeyFrames[i] = isCleared || isReplaced ? i : mKeyFrames[i - 1];
+        }
+    }
+
+    /**
+     * 打开磁盘上的APNG文件
+     */
+    public static ApngFrameSource open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            // 文件被替换后不再使用旧的缓存和检测结果
+            String path = file.getAbsolutePath();
+            return new ApngFrameSource("apng:" + path + "@" + file.lastModified() + "/" + file.length(),
+                    "apng:" + path + "@" + file.lastModified() + "#", randomAccessFile, channel, 0, channel.size());
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开Assets中的APNG文件，png文件默认不压缩存储，可以直接按偏移读取
+     *
+     * @param assetManager 资源管理器
+     * @param assetsPath   Assets中的文件路径
+     */
+    public static ApngFrameSource open(AssetManager assetManager, String assetsPath) throws IOException {
+        final AssetFileDescriptor descriptor = assetManager.openFd(assetsPath);
+        final FileInputStream inputStream;
+        try {
+            inputStream = descriptor.createInputStream();
+        } catch (IOException e) {
+            descriptor.close();
+            throw e;
+        }
+        Closeable closeable = new Closeable() {
+            @Override
+            public void close() throws IOException {
+                try {
+                    inputStream.close();
+                } finally {
+                    descriptor.close();
+                }
+            }
+        };
+        try {
+            return new ApngFrameSource("apng:assets:" + assetsPath, "apng:assets:" + assetsPath + "#", closeable,
+                    inputStream.getChannel(), descriptor.getStartOffset(), descriptor.getLength());
+        } catch (IOException e) {
+            closeable.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public int getFrameCount() {
+        return mFrames.length;
+    }
+
+    @Override
+    public int getFrameDuration(int index) {
+        return mFrames[index].mDuration;
+    }
+
+    @Override
+    public String getFrameKey(int index) {
+        return mKeyPrefix + index;
+    }
+
+    /**
+     * 合成到指定帧后按绘制区域缩放复制，帧之间有依赖，同一时间只能合成一帧
+     */
+    @Override
+    public synchronized Bitmap decode(int index, int width, int height, Bitmap.Config config,
+                                      BitmapPool bitmapPool) {
+        if (index < 0 || index >= mFrames.length) {
+            return null;
+        }
+        try {
+            compose(index, bitmapPool);
+        } catch (IOException e) {
+            Log.e(TAG, "decode: " + mName + " frame " + index + " failed", e);
+            mComposedIndex = -1;
+            return null;
+        }
+        int targetWidth = mWidth;
+        int targetHeight = mHeight;
+        if (width > 0 && height > 0) {
+            float scale = Math.max(width / (float) mWidth, height / (float) mHeight);
+            if (scale < 1) {
+                targetWidth = Math.max(1, Math.round(mWidth * scale));
+                targetHeight = Math.max(1, Math.round(mHeight * scale));
+            }
+        }
+        Bitmap bitmap = bitmapPool.obtain(targetWidth, targetHeight, config == null ? Bitmap.Config.ARGB_8888 : config);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        mDstRect.set(0, 0, targetWidth, targetHeight);
+        new Canvas(bitmap).drawBitmap(mCanvasBitmap, null, mDstRect, mScalePaint);
+        return bitmap;
+    }
+
+    /**
+     * 把画布合成到指定帧，按顺序播放时只需合成新的一帧
+     */
+    private void compose(int index, BitmapPool bitmapPool) throws IOException {
+        if (mCanvasBitmap == null) {
+            mCanvasBitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+            mCanvas = new Canvas(mCanvasBitmap);
+            mComposedIndex = -1;
+        }
+        if (index == mComposedIndex) {
+            return;
+        }
+        int start;
+        if (mComposedIndex >= 0 && index > mComposedIndex && mKeyFrames[index] <= mComposedIndex + 1) {
+            start = mComposedIndex + 1;
+        } else {
+            start = mKeyFrames[index];
+            mComposedIndex = -1;
+            mCanvasBitmap.eraseColor(Color.TRANSPARENT);
+            releaseSavedBitmap(bitmapPool);
+        }
+        for (int i = start; i <= index; i++) {
+            if (mComposedIndex >= 0) {
+                dispose(mFrames[mComposedIndex], bitmapPool);
+            }
+            Frame frame = mFrames[i];
+            if (frame.mDispose == DISPOSE_PREVIOUS) {
+                saveRegion(frame, bitmapPool);
+            }
+            drawFrame(frame, bitmapPool);
+            mComposedIndex = i;
+        }
+    }
+
+    /**
+     * 显示下一帧前按上一帧的dispose_op处理画布
+     */
+    private void dispose(Frame frame, BitmapPool bitmapPool) {
+        if (frame.mDispose == DISPOSE_NONE) {
+            return;
+        }
+        frame.getRect(mRect);
+        clearRegion(mRect);
+        if (frame.mDispose == DISPOSE_PREVIOUS && mSavedBitmap != null) {
+            mCanvas.drawBitmap(mSavedBitmap, frame.mX, frame.mY, null);
+        }
+        releaseSavedBitmap(bitmapPool);
+    }
+
+    /**
+     * dispose_op为PREVIOUS的帧在绘制前保存所在区域，第一帧没有之前的内容，按BACKGROUND处理
+     */
+    private void saveRegion(Frame frame, BitmapPool bitmapPool) {
+        releaseSavedBitmap(bitmapPool);
+        if (mComposedIndex < 0) {
+            return;
+        }
+        mSavedBitmap = bitmapPool.obtain(frame.mWidth, frame.mHeight, Bitmap.Config.ARGB_8888);
+        mSavedBitmap.eraseColor(Color.TRANSPARENT);
+        frame.getRect(mRect);
+        mDstRect.set(0, 0, frame.mWidth, frame.mHeight);
+        new Canvas(mSavedBitmap).drawBitmap(mCanvasBitmap, mRect, mDstRect, null);
+    }
+
+    private void releaseSavedBitmap(BitmapPool bitmapPool) {
+        if (mSavedBitmap != null) {
+            bitmapPool.put(mSavedBitmap);
+            mSavedBitmap = null;
+        }
+    }
+
+    private void clearRegion(Rect rect) {
+        mCanvas.save();
+        mCanvas.clipRect(rect);
+        mCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        mCanvas.restore();
+    }
+
+    /**
+     * 解码一帧并按blend_op绘制到画布上
+     */
+    private void drawFrame(Frame frame, BitmapPool bitmapPool) throws IOException {
+        int length = buildPng(frame);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inSampleSize = 1;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.outWidth = frame.mWidth;
+        options.outHeight = frame.mHeight;
+        bitmapPool.prepare(options);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(mPngBuffer, 0, length, options);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "drawFrame: reuse bitmap failed", e);
+            EncodedFrameSource.discardInBitmap(options);
+            bitmap = BitmapFactory.decodeByteArray(mPngBuffer, 0, length, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("decode frame data failed");
+        }
+        frame.getRect(mRect);
+        if (frame.mBlend == BLEND_SOURCE) {
+            clearRegion(mRect);
+        }
+        mDstRect.set(0, 0, frame.mWidth, frame.mHeight);
+        mCanvas.drawBitmap(bitmap, mDstRect, mRect, null);
+        bitmapPool.put(bitmap);
+    }
+
+    /**
+     * 把帧的数据块拼成独立的PNG：按帧尺寸改写的IHDR、共用数据块、合并为一个IDAT的帧数据和IEND
+     *
+     * @return PNG的字节数
+     */
+    private int buildPng(Frame frame) throws IOException {
+        int size = SIGNATURE.length + 12 + IHDR_SIZE + mSharedChunks.length + 12 + frame.mDataSize + IEND.length;
+        if (mPngBuffer.length < size) {
+            mPngBuffer = new byte[size];
+        }
+        byte[] buffer = mPngBuffer;
+        int position = 0;
+        System.arraycopy(SIGNATURE, 0, buffer, position, SIGNATURE.length);
+        position += SIGNATURE.length;
+        int chunkStart = position;
+        position = putInt(buffer, position, IHDR_SIZE);
+        position = putInt(buffer, position, TYPE_IHDR);
+        position = putInt(buffer, position, frame.mWidth);
+        position = putInt(buffer, position, frame.mHeight);
+        System.arraycopy(mHeaderTail, 0, buffer, position, mHeaderTail.length);
+        position += mHeaderTail.length;
+        position = putCrc(buffer, chunkStart, position);
+        System.arraycopy(mSharedChunks, 0, buffer, position, mSharedChunks.length);
+        position += mSharedChunks.length;
+        chunkStart = position;
+        position = putInt(buffer, position, frame.mDataSize);
+        position = putInt(buffer, position, TYPE_IDAT);
+        for (int i = 0; i < frame.mDataCount; i++) {
+            readFully(frame.mDataOffsets[i], buffer, position, frame.mDataLengths[i]);
+            position += frame.mDataLengths[i];
+        }
+        position = putCrc(buffer, chunkStart, position);
+        System.arraycopy(IEND, 0, buffer, position, IEND.length);
+        return position + IEND.length;
+    }
+
+    private static int putInt(byte[] buffer, int position, int value) {
+        buffer[position] = (byte) (value >>> 24);
+        buffer[position + 1] = (byte) (value >>> 16);
+        buffer[position + 2] = (byte) (value >>> 8);
+        buffer[position + 3] = (byte) value;
+        return position + 4;
+    }
+
+    /**
+     * 写入数据块的CRC，校验范围为类型和数据
+     */
+    private int putCrc(byte[] buffer, int chunkStart, int end) {
+        mCrc.reset();
+        mCrc.update(buffer, chunkStart + 4, end - chunkStart - 4);
+        return putInt(buffer, end, (int) mCrc.getValue());
+    }
+
+    /**
+     * 按偏移读取，不改变FileChannel的位置
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        byte[] data = new byte[length];
+        readFully(position, data, 0, length);
+        return ByteBuffer.wrap(data);
+    }
+
+    private void readFully(long position, byte[] buffer, int offset, int length) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, offset, length);
+        while (target.hasRemaining()) {
+            if (mChannel.read(target, mBaseOffset + position + target.position() - offset) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+    }
+
+    /**
+     * 关闭文件，之后不能再解码，合成用的画布在之后回收
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (mCanvasBitmap != null) {
+                mCanvasBitmap.recycle();
+                mCanvasBitmap = null;
+                mCanvas = null;
+            }
+            if (mSavedBitmap != null) {
+                mSavedBitmap.recycle();
+                mSavedBitmap = null;
+            }
+            mPngBuffer = new byte[0];
+            mComposedIndex = -1;
+        }
+        mCloseable.close();
+    }
+
+    private static final class Frame {
+        private final int mWidth;
+        private final int mHeight;
+        private final int mX;
+        private final int mY;
+        private final int mDuration;
+        private final int mDispose;
+        private final int mBlend;
+        private long[] mDataOffsets = new long[4];
+        private int[] mDataLengths = new int[4];
+        private int mDataCount;
+        private int mDataSize;
+
+        /**
+         * 没有fcTL的普通PNG
+         */
+        private Frame(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+            mX = 0;
+            mY = 0;
+            mDuration = 0;
+            mDispose = DISPOSE_NONE;
+            mBlend = BLEND_SOURCE;
+        }
+
+        /**
+         * @param control fcTL数据，依次为sequence_number、width、height、x_offset、y_offset、delay_num、delay_den、
+         *                dispose_op、blend_op
+         */
+        private Frame(ByteBuffer control, int canvasWidth, int canvasHeight) throws IOException {
+            mWidth = control.getInt(4);
+            mHeight = control.getInt(8);
+            mX = control.getInt(12);
+            mY = control.getInt(16);
+            int delayNumerator = control.getShort(20) & 0xffff;
+            int delayDenominator = control.getShort(22) & 0xffff;
+            // 分母为0时按1/100秒计算
+            mDuration = Math.round(delayNumerator * 1000f / (delayDenominator == 0 ? 100 : delayDenominator));
+            mDispose = control.get(24);
+            mBlend = control.get(25);
+            if (mWidth <= 0 || mHeight <= 0 || mX < 0 || mY < 0 || mX + mWidth > canvasWidth
+                    || mY + mHeight > canvasHeight) {
+                throw new IOException("corrupted fcTL");
+            }
+        }
+
+        private void addData(long offset, int length) {
+            if (mDataCount == mDataOffsets.length) {
+                long[] offsets = new long[mDataCount * 2];
+                int[] lengths = new int[mDataCount * 2];
+                System.arraycopy(mDataOffsets, 0, offsets, 0, mDataCount);
+                System.arraycopy(mDataLengths, 0, lengths, 0, mDataCount);
+                mDataOffsets = offsets;
+                mDataLengths = lengths;
+            }
+            mDataOffsets[mDataCount] = offset;
+            mDataLengths[mDataCount] = length;
+            mDataCount++;
+            mDataSize += length;
+        }
+
+        private boolean isFullFrame(int canvasWidth, int canvasHeight) {
+            return mX == 0 && mY == 0 && mWidth == canvasWidth && mHeight == canvasHeight;
+        }
+
+        private void getRect(Rect rect) {
+            rect.set(mX, mY, mX + mWidth, mY + mHeight);
+        }
+    }
+}
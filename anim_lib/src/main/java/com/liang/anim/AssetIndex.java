@@ -0,0 +1,105 @@
+package com.liang.anim;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * 进程内共享的Assets文件夹索引，每个文件夹只通过{@link AssetManager#list(String)}列出一次，
+ * 文件名按其中的数字自然排序，frame_2排在frame_10之前。
+ * 开启持久化后索引保存在SharedPreferences中，应用更新前重启进程也不再列出文件夹
+ */
+public final class AssetIndex {
+    private static final String TAG = "AssetIndex";
+    private static final String PREFERENCES_NAME = "sequence_frame_assets";
+    /**
+     * 文件名中不会出现的分隔符
+     */
+    private static final String SEPARATOR = "/";
+    private static final AssetIndex sInstance = new AssetIndex();
+
+    private final HashMap<String, String[]> mFolders = new HashMap<>();
+    private SharedPreferences mPreferences;
+    private String mKeySuffix;
+
+    private AssetIndex() {
+    }
+
+    public static AssetIndex getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * 开启持久化，之后建立的索引会保存，已保存的索引在下次列出文件夹时直接读取
+     */
+    public synchronized void enablePersistence(Context context) {
+        if (mPreferences != null) {
+            return;
+        }
+        long updateTime = 0;
+        try {
+            updateTime = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "enablePersistence: package not found", e);
+        }
+        // 应用更新后Assets可能变化，使用新的键
+        mKeySuffix = "@" + updateTime;
+        mPreferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * 列出文件夹中的文件，已建立索引时直接返回
+     *
+     * @param assetManager 资源管理器
+     * @param folderPath   Assets资源文件夹路径
+     * @return 按自然顺序排列的文件名，多个调用方共用，不能修改
+     */
+    public String[] list(AssetManager assetManager, String folderPath) throws IOException {
+        SharedPreferences preferences;
+        String key;
+        synchronized (this) {
+            String[] fileNames = mFolders.get(folderPath);
+            if (fileNames != null) {
+                return fileNames;
+            }
+            preferences = mPreferences;
+            key = folderPath + mKeySuffix;
+        }
+        String value = preferences == null ? null : preferences.getString(key, null);
+        String[] fileNames;
+        if (value != null) {
+            fileNames = value.isEmpty() ? new String[0] : value.split(SEPARATOR);
+        } else {
+            fileNames = assetManager.list(folderPath);
+            if (fileNames == null) {
+                throw new IOException(folderPath + " is not found");
+            }
+            Arrays.sort(fileNames, NaturalOrder.getInstance());
+            if (preferences != null) {
+                preferences.edit().putString(key, TextUtils.join(SEPARATOR, fileNames)).apply();
+            }
+        }
+        synchronized (this) {
+            String[] indexed = mFolders.get(folderPath);
+            if (indexed != null) {
+                return indexed;
+            }
+            mFolders.put(folderPath, fileNames);
+            return fileNames;
+        }
+    }
+
+    /**
+     * 清空内存中的索引，已保存的索引不受影响
+     */
+    public synchronized void clear() {
+        mFolders.clear();
+    }
+}
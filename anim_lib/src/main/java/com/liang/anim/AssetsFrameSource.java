@@ -0,0 +1,84 @@
+package com.liang.anim;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Assets资源文件夹中的序列帧，每个文件一帧
+ */
+public class AssetsFrameSource extends EncodedFrameSource {
+    private static final String TAG = "AssetsFrameSource";
+
+    private final AssetManager mAssetManager;
+    private final String mFolderPath;
+    private final String[] mPaths;
+
+    /**
+     * @param assetManager 资源管理器
+     * @param folderPath   Assets资源文件夹路径
+     * @param fileNames    帧文件名，按播放顺序排列，元素为null表示空帧
+     */
+    public AssetsFrameSource(AssetManager assetManager, String folderPath, String[] fileNames) {
+        mAssetManager = assetManager;
+        mFolderPath = folderPath;
+        mPaths = new String[fileNames.length];
+        for (int i = 0; i < fileNames.length; i++) {
+            mPaths[i] = fileNames[i] == null ? null : folderPath + "/" + fileNames[i];
+        }
+    }
+
+    /**
+     * 按文件夹中的文件列表创建，文件按{@link AssetIndex}中的自然顺序排列
+     *
+     * @param assetManager 资源管理器
+     * @param folderPath   Assets资源文件夹路径
+     */
+    public static AssetsFrameSource list(AssetManager assetManager, String folderPath) throws IOException {
+        return new AssetsFrameSource(assetManager, folderPath, AssetIndex.getInstance().list(assetManager, folderPath));
+    }
+
+    @Override
+    public String getName() {
+        return "assets:" + mFolderPath;
+    }
+
+    @Override
+    public int getFrameCount() {
+        return mPaths.length;
+    }
+
+    @Override
+    public String getFrameKey(int index) {
+        return mPaths[index] == null ? null : "assets:" + mPaths[index];
+    }
+
+    @Override
+    public Bitmap decode(int index, int width, int height, Bitmap.Config config, BitmapPool bitmapPool) {
+        return mPaths[index] == null ? null : super.decode(index, width, height, config, bitmapPool);
+    }
+
+    @Override
+    protected Bitmap decodeFrame(int index, BitmapFactory.Options options) {
+        InputStream inputStream = null;
+        try {
+            inputStream = mAssetManager.open(mPaths[index]);
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } catch (IOException e) {
+            Log.e(TAG, "decodeFrame: failed", e);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "decodeFrame: close failed", e);
+                }
+            }
+        }
+        return null;
+    }
+}
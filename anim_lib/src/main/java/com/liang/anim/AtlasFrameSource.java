@@ -0,0 +1,35 @@
+package com.liang.anim;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+
+/**
+ * 合图或裁剪后的序列帧，帧对应的大图按{@link FrameAtlas}的缩放比例解码，同一张大图的帧共用缓存
+ */
+final class AtlasFrameSource extends AssetsFrameSource {
+    private final FrameAtlas mAtlas;
+
+    AtlasFrameSource(AssetManager assetManager, String folderPath, FrameAtlas atlas) {
+        super(assetManager, folderPath, getImages(atlas));
+        mAtlas = atlas;
+    }
+
+    private static String[] getImages(FrameAtlas atlas) {
+        String[] images = new String[atlas.getFrameCount()];
+        for (int index = 0; index < images.length; index++) {
+            images[index] = atlas.getImage(index);
+        }
+        return images;
+    }
+
+    FrameAtlas getAtlas() {
+        return mAtlas;
+    }
+
+    @Override
+    public Bitmap decode(int index, int width, int height, Bitmap.Config config, BitmapPool bitmapPool) {
+        int[] size = new int[2];
+        mAtlas.getImageTargetSize(index, width, height, size);
+        return super.decode(index, size[0], size[1], config, bitmapPool);
+    }
+}
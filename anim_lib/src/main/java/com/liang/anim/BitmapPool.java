@@ -0,0 +1,254 @@
+package com.liang.anim;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 帧图片复用池，按占用字节数分桶保存已绘制完的Bitmap，
+ * 解码时通过{@link BitmapFactory.Options#inBitmap}复用，稳定播放时不再分配新的Bitmap
+ */
+public final class BitmapPool {
+    /**
+     * 复用的Bitmap最多比所需大多少倍，避免小图长期占用大块内存
+     */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+    private static final BitmapPool sInstance = new BitmapPool((int) Math.min(Runtime.getRuntime().maxMemory() / 16,
+            Integer.MAX_VALUE));
+
+    private final TreeMap<Integer, LinkedHashSet<Bitmap>> mBuckets = new TreeMap<>();
+    /**
+     * 池中的Bitmap按放入顺序排列，值为所在分桶的字节数。Bitmap没有重写equals，按对象本身查找，增删都是O(1)
+     */
+    private final LinkedHashMap<Bitmap, Integer> mOrder = new LinkedHashMap<>();
+    private int mMaxSize;
+    private int mSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    /**
+     * @param maxSize 池内最多保存的字节数
+     */
+    public BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * 进程内共享的复用池
+     */
+    public static BitmapPool getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * 取出一个可以作为inBitmap解码指定尺寸的Bitmap
+     *
+     * @param width  解码后的宽
+     * @param height 解码后的高
+     * @param config 解码格式
+     * @return 没有合适的Bitmap时返回null
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        int size = getBitmapByteSize(width, height, config);
+        Map.Entry<Integer, LinkedHashSet<Bitmap>> entry = mBuckets.ceilingEntry(size);
+        while (entry != null && entry.getKey() <= size * MAX_SIZE_MULTIPLE) {
+            Iterator<Bitmap> iterator = entry.getValue().iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next();
+                if (canReuse(bitmap, width, height, config)) {
+                    iterator.remove();
+                    if (entry.getValue().isEmpty()) {
+                        mBuckets.remove(entry.getKey());
+                    }
+                    mOrder.remove(bitmap);
+                    mSize -= entry.getKey();
+                    mHitCount++;
+                    return bitmap;
+                }
+            }
+            entry = mBuckets.higherEntry(entry.getKey());
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * 取出一个尺寸和格式完全一致的Bitmap，池中没有时新建，用于直接写入像素而不是解码
+     */
+    Bitmap obtain(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = get(width, height, config);
+        if (bitmap != null && (bitmap.getWidth() != width || bitmap.getHeight() != height
+                || bitmap.getConfig() != config)) {
+            reconfigure(bitmap, width, height, config);
+        }
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * 归还不再绘制的Bitmap，无法复用的直接回收
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || mOrder.containsKey(bitmap)) {
+            return;
+        }
+        int size = getBitmapByteSize(bitmap);
+        if (!bitmap.isMutable() || size > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+        LinkedHashSet<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new LinkedHashSet<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.add(bitmap);
+        mOrder.put(bitmap, size);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * 按需设置解码参数的inBitmap
+     *
+     * @param options 已经通过inJustDecodeBounds取得尺寸，并设置好采样率和缩放的解码参数
+     */
+    public void prepare(BitmapFactory.Options options) {
+        options.inMutable = true;
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return;
+        }
+        int sampleSize = Math.max(1, options.inSampleSize);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT && sampleSize != 1) {
+            return;
+        }
+        Bitmap.Config config = options.inPreferredConfig == null ? Bitmap.Config.ARGB_8888 : options.inPreferredConfig;
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        if (options.inScaled && options.inDensity > 0 && options.inTargetDensity > 0
+                && options.inDensity != options.inTargetDensity) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+                return;
+            }
+            float scale = options.inTargetDensity / (float) options.inDensity;
+            width = (int) (width * scale + 0.5f);
+            height = (int) (height * scale + 0.5f);
+        }
+        options.inBitmap = get(width, height, config);
+    }
+
+    /**
+     * 释放多余的Bitmap直到不超过指定字节数
+     */
+    public synchronized void trimToSize(int maxSize) {
+        Iterator<Map.Entry<Bitmap, Integer>> iterator = mOrder.entrySet().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            Map.Entry<Bitmap, Integer> eldest = iterator.next();
+            iterator.remove();
+            Bitmap bitmap = eldest.getKey();
+            int size = eldest.getValue();
+            LinkedHashSet<Bitmap> bucket = mBuckets.get(size);
+            if (bucket != null) {
+                bucket.remove(bitmap);
+                if (bucket.isEmpty()) {
+                    mBuckets.remove(size);
+                }
+            }
+            mSize -= size;
+            mEvictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    /**
+     * 解码时从池中取到可复用Bitmap的次数
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * 解码时没有可复用Bitmap，需要重新分配的次数
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        int total = mHitCount + mMissCount;
+        return "BitmapPool[size=" + mSize + ",maxSize=" + mMaxSize + ",hits=" + mHitCount + ",misses=" + mMissCount
+                + ",hitRate=" + (total == 0 ? 0 : 100 * mHitCount / total) + "%]";
+    }
+
+    private static boolean canReuse(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return true;
+        }
+        return bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config;
+    }
+
+    static int getBitmapByteSize(int width, int height, Bitmap.Config config) {
+        return width * height * getBytesPerPixel(config);
+    }
+
+    static int getBitmapByteSize(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return getAllocationByteCount(bitmap);
+        }
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static int getAllocationByteCount(Bitmap bitmap) {
+        return bitmap.getAllocationByteCount();
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == null) {
+            return 4;
+        }
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void reconfigure(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+        bitmap.reconfigure(width, height, config);
+    }
+}
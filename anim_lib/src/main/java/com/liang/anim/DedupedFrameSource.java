@@ -0,0 +1,124 @@
+package com.liang.anim;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+
+/**
+ * 合并了重复帧的序列，连续相同的帧合并为一帧，显示时长为合并前各帧之和；
+ * 不连续的相同帧使用第一次出现的帧的标识和解码结果，只解码和缓存一次
+ */
+final class DedupedFrameSource implements FrameSource {
+    private final FrameSource mSource;
+    /**
+     * 合并后每帧对应的原序列第一帧，最后多一个元素为原序列帧数
+     */
+    private final int[] mStarts;
+    /**
+     * 合并后每帧实际解码的原序列帧
+     */
+    private final int[] mDecodeIndexes;
+
+    /**
+     * @param source       原序列
+     * @param firstIndexes 原序列每帧内容第一次出现的下标，见{@link FrameDuplicates}
+     */
+    DedupedFrameSource(FrameSource source, int[] firstIndexes) {
+        mSource = source;
+        int count = 0;
+        int[] starts = new int[firstIndexes.length + 1];
+        for (int index = 0; index < firstIndexes.length; index++) {
+            if (index == 0 || firstIndexes[index] != firstIndexes[index - 1]) {
+                starts[count++] = index;
+            }
+        }
+        starts[count] = firstIndexes.length;
+        mStarts = Arrays.copyOf(starts, count + 1);
+        mDecodeIndexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            mDecodeIndexes[i] = firstIndexes[mStarts[i]];
+        }
+    }
+
+    /**
+     * 合并前的序列
+     */
+    FrameSource getSource() {
+        return mSource;
+    }
+
+    /**
+     * 原序列的帧合并后的下标
+     */
+    int getFrameAt(int sourceIndex) {
+        if (sourceIndex >= mStarts[mStarts.length - 1]) {
+            return mDecodeIndexes.length;
+        }
+        int index = Arrays.binarySearch(mStarts, 0, mStarts.length - 1, Math.max(0, sourceIndex));
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * 合并后的帧对应的原序列第一帧
+     */
+    int getSourceIndex(int index) {
+        return mStarts[index];
+    }
+
+    /**
+     * 合并前的总帧数，按整体进度定位时使用
+     */
+    int getSourceFrameCount() {
+        return mStarts[mStarts.length - 1];
+    }
+
+    /**
+     * 合并后的帧时长，原序列没有指定时长的帧按默认时长累加
+     *
+     * @return 毫秒
+     */
+    long getFrameDuration(int index, long defaultDuration) {
+        long duration = 0;
+        for (int sourceIndex = mStarts[index]; sourceIndex < mStarts[index + 1]; sourceIndex++) {
+            int sourceDuration = mSource.getFrameDuration(sourceIndex);
+            duration += sourceDuration > 0 ? sourceDuration : defaultDuration;
+        }
+        return duration;
+    }
+
+    @Override
+    public String getName() {
+        return mSource.getName();
+    }
+
+    @Override
+    public int getFrameCount() {
+        return mDecodeIndexes.length;
+    }
+
+    /**
+     * 原序列有帧没有指定时长时无法得出总时长，由{@link #getFrameDuration(int, long)}按默认时长计算
+     */
+    @Override
+    public int getFrameDuration(int index) {
+        long duration = 0;
+        for (int sourceIndex = mStarts[index]; sourceIndex < mStarts[index + 1]; sourceIndex++) {
+            int sourceDuration = mSource.getFrameDuration(sourceIndex);
+            if (sourceDuration <= 0) {
+                return 0;
+            }
+            duration += sourceDuration;
+        }
+        return (int) Math.min(duration, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public String getFrameKey(int index) {
+        return mSource.getFrameKey(mDecodeIndexes[index]);
+    }
+
+    @Override
+    public Bitmap decode(int index, int width, int height, Bitmap.Config config, BitmapPool bitmapPool) {
+        return mSource.decode(mDecodeIndexes[index], width, height, config, bitmapPool);
+    }
+}
@@ -0,0 +1,102 @@
+package com.liang.anim;
+
+import android.graphics.Rect;
+
+/**
+ * 记录每一帧相对上一帧发生变化的区域，由加载时分析出的{@link FrameDiffs}映射得到，绘制线程不再比较像素。
+ * 区域使用绘制区域坐标，绘制区域或帧资源变化后需要{@link #reset(int)}
+ */
+final class DirtyRegions {
+    private Rect[] mRects = new Rect[0];
+
+    void reset(int frameCount) {
+        if (mRects.length != frameCount) {
+            mRects = new Rect[frameCount];
+        } else {
+            for (int i = 0; i < frameCount; i++) {
+                mRects[i] = null;
+            }
+        }
+    }
+
+    int getFrameCount() {
+        return mRects.length;
+    }
+
+    /**
+     * 帧相对上一帧的变化区域，首帧的上一帧为最后一帧
+     *
+     * @return 尚未计算时返回null，两帧完全相同时返回空区域
+     */
+    Rect get(int index) {
+        return index >= 0 && index < mRects.length ? mRects[index] : null;
+    }
+
+    void put(int index, Rect rect) {
+        if (index >= 0 && index < mRects.length) {
+            mRects[index] = rect;
+        }
+    }
+
+    /**
+     * 计算从from之后一帧到to之间所有帧变化区域的并集，即绘制完from后直接绘制to需要更新的区域
+     *
+     * @return 中间有未计算的帧时返回false
+     */
+    boolean union(int from, int to, Rect out) {
+        int count = mRects.length;
+        if (from < 0 || from >= count || to < 0 || to >= count || from == to) {
+            return false;
+        }
+        out.setEmpty();
+        int index = from;
+        do {
+            index = (index + 1) % count;
+            Rect rect = mRects[index];
+            if (rect == null) {
+                return false;
+            }
+            if (!rect.isEmpty()) {
+                if (out.isEmpty()) {
+                    out.set(rect);
+                } else {
+                    out.union(rect);
+                }
+            }
+        } while (index != to);
+        return true;
+    }
+
+    /**
+     * 把原图坐标的变化区域映射到绘制区域，合并了重复帧时按合并后每帧对应的原序列第一帧取区域
+     *
+     * @param diffs    加载时分析出的变化区域
+     * @param source   当前播放的来源
+     * @param drawRect 绘制区域
+     */
+    void map(FrameDiffs diffs, FrameSource source, Rect drawRect) {
+        DedupedFrameSource deduped = source instanceof DedupedFrameSource ? (DedupedFrameSource) source : null;
+        float scaleX = drawRect.width() / (float) diffs.getWidth();
+        float scaleY = drawRect.height() / (float) diffs.getHeight();
+        for (int index = 0; index < mRects.length; index++) {
+            int sourceIndex = deduped == null ? index : deduped.getSourceIndex(index);
+            Rect diff = sourceIndex < diffs.getFrameCount() ? diffs.get(sourceIndex) : null;
+            if (diff == null) {
+                mRects[index] = new Rect(drawRect);
+                continue;
+            }
+            if (diff.isEmpty()) {
+                mRects[index] = new Rect();
+                continue;
+            }
+            // 缩放绘制时相邻像素会参与过滤，向外多扩1像素
+            Rect rect = new Rect((int) Math.floor(diff.left * scaleX) - 1, (int) Math.floor(diff.top * scaleY) - 1,
+                    (int) Math.ceil(diff.right * scaleX) + 1, (int) Math.ceil(diff.bottom * scaleY) + 1);
+            rect.offset(drawRect.left, drawRect.top);
+            if (!rect.intersect(drawRect)) {
+                rect.setEmpty();
+            }
+            mRects[index] = rect;
+        }
+    }
+}
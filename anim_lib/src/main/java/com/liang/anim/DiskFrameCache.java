@@ -0,0 +1,427 @@
+package com.liang.anim;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 磁盘上的已解码帧缓存，保存按绘制区域缩放并转换格式后的像素，再次启动时直接复制像素，不需要解码。
+ * 每帧一个文件，按总字节数淘汰最久未使用的帧。
+ * 文件先写到临时文件再重命名，多个控件或进程同时写入同一帧时不会读到不完整的文件。
+ * 文件格式（小端序）：
+ * <pre>
+ * magic      4字节 "SQFC"
+ * version    int32 当前为1
+ * width      int32 帧宽
+ * height     int32 帧高
+ * config     int32 1为ARGB_8888，2为RGB_565，3为ALPHA_8
+ * hasAlpha   int32 1表示有透明像素
+ * keyLength  int32 键的字节数
+ * key        UTF-8编码的键，用于排除文件名冲突
+ * pixels     copyPixelsToBuffer的输出
+ * </pre>
+ */
+public final class DiskFrameCache {
+    private static final String TAG = "DiskFrameCache";
+    private static final String DIRECTORY_NAME = "sequence_frames";
+    private static final String FILE_EXTENSION = ".frame";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final int MAGIC = 0x43465153;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+    private static final int CONFIG_ARGB_8888 = 1;
+    private static final int CONFIG_RGB_565 = 2;
+    private static final int CONFIG_ALPHA_8 = 3;
+    private static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+    /**
+     * 超过这个时间的临时文件认为是写入中断留下的
+     */
+    private static final long TEMP_EXPIRE_MILLIS = 60 * 1000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * 每个读取线程复用的文件数据
+     */
+    private static final ThreadLocal<byte[]> sBuffers = new ThreadLocal<>();
+    private static DiskFrameCache sInstance;
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private final String mStamp;
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashSet<String> mPending = new HashSet<>();
+    /**
+     * 压缩和写入文件在后台低优先级线程中逐帧执行，不占用解码帧的绘制线程
+     */
+    private final FrameScheduler.Lane mWriter = FrameScheduler.getInstance().newBackgroundLane();
+    private boolean mIsLoaded;
+    private long mSize;
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * @param directory 缓存文件夹，不要与其他缓存共用
+     * @param maxSize   最多占用的字节数
+     */
+    public DiskFrameCache(File directory, long maxSize) {
+        this(directory, maxSize, "");
+    }
+
+    private DiskFrameCache(File directory, long maxSize, String stamp) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        mStamp = stamp;
+    }
+
+    /**
+     * 进程内共享的磁盘缓存，位于应用缓存目录，最多占用64MB，应用更新后旧的帧不再命中并逐渐被淘汰
+     */
+    public static synchronized DiskFrameCache getInstance(Context context) {
+        if (sInstance == null) {
+            long updateTime = 0;
+            try {
+                updateTime = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.w(TAG, "getInstance: package not found", e);
+            }
+            sInstance = new DiskFrameCache(new File(context.getCacheDir(), DIRECTORY_NAME), DEFAULT_MAX_SIZE,
+                    "@" + updateTime);
+        }
+        return sInstance;
+    }
+
+    /**
+     * 读取已缓存的帧
+     *
+     * @param source     帧标识，见{@link FrameSource#getFrameKey(int)}
+     * @param width      解码时的绘制区域宽
+     * @param height     解码时的绘制区域高
+     * @param config     解码时的像素格式
+     * @param bitmapPool 复用池
+     * @return 没有缓存或文件损坏时返回null
+     */
+    public Bitmap get(String source, int width, int height, Bitmap.Config config, BitmapPool bitmapPool) {
+        String key = getKey(source, width, height, config);
+        String name = getFileName(key);
+        synchronized (this) {
+            loadEntries();
+            if (mEntries.get(name) == null) {
+                mMissCount++;
+                return null;
+            }
+        }
+        File file = new File(mDirectory, name);
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            ByteBuffer buffer = read(inputStream, file.length());
+            Bitmap bitmap = readFrame(buffer, key, bitmapPool);
+            synchronized (this) {
+                mHitCount++;
+            }
+            // 按修改时间恢复下次启动时的使用顺序
+            file.setLastModified(System.currentTimeMillis());
+            return bitmap;
+        } catch (IOException e) {
+            Log.w(TAG, "get: " + file + " is invalid", e);
+            remove(name);
+        } finally {
+            closeQuietly(inputStream);
+        }
+        return null;
+    }
+
+    /**
+     * 把整个文件读入当前线程复用的缓冲区，缓冲区不够大时才重新分配
+     */
+    private static ByteBuffer read(FileInputStream inputStream, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("file too large");
+        }
+        byte[] data = sBuffers.get();
+        if (data == null || data.length < length) {
+            data = new byte[(int) length];
+            sBuffers.set(data);
+        }
+        int position = 0;
+        while (position < length) {
+            int count = inputStream.read(data, position, (int) length - position);
+            if (count < 0) {
+                throw new IOException("unexpected end of file");
+            }
+            position += count;
+        }
+        return ByteBuffer.wrap(data, 0, position);
+    }
+
+    private static Bitmap readFrame(ByteBuffer buffer, String key, BitmapPool bitmapPool) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("unsupported header");
+        }
+        int width = buffer.getInt(8);
+        int height = buffer.getInt(12);
+        Bitmap.Config config = toConfig(buffer.getInt(16));
+        boolean hasAlpha = buffer.getInt(20) != 0;
+        int keyLength = buffer.getInt(24);
+        if (width <= 0 || height <= 0 || config == null || keyLength < 0
+                || HEADER_SIZE + (long) keyLength > buffer.limit()) {
+            throw new IOException("corrupted header");
+        }
+        byte[] keyBytes = new byte[keyLength];
+        buffer.position(HEADER_SIZE);
+        buffer.get(keyBytes);
+        if (!Arrays.equals(keyBytes, key.getBytes(UTF_8))) {
+            throw new IOException("key mismatch");
+        }
+        Bitmap bitmap = bitmapPool.obtain(width, height, config);
+        if (buffer.remaining() < bitmap.getByteCount()) {
+            bitmapPool.put(bitmap);
+            throw new IOException("truncated pixels");
+        }
+        bitmap.copyPixelsFromBuffer(buffer);
+        bitmap.setHasAlpha(hasAlpha);
+        return bitmap;
+    }
+
+    /**
+     * 缓存一帧，像素在调用线程复制，写文件在后台串行执行
+     *
+     * @param source 帧标识，见{@link FrameSource#getFrameKey(int)}
+     * @param width  解码时的绘制区域宽
+     * @param height 解码时的绘制区域高
+     * @param config 解码时的像素格式
+     * @param bitmap 解码结果
+     */
+    public void put(String source, int width, int height, Bitmap.Config config, Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || toCode(bitmap.getConfig()) == 0) {
+            return;
+        }
+        final String key = getKey(source, width, height, config);
+        final String name = getFileName(key);
+        synchronized (this) {
+            loadEntries();
+            if (mEntries.containsKey(name) || !mPending.add(name)) {
+                return;
+            }
+        }
+        byte[] keyBytes = key.getBytes(UTF_8);
+        final ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + bitmap.getByteCount())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        frame.putInt(MAGIC).putInt(VERSION).putInt(bitmap.getWidth()).putInt(bitmap.getHeight())
+                .putInt(toCode(bitmap.getConfig())).putInt(bitmap.hasAlpha() ? 1 : 0).putInt(keyBytes.length)
+                .put(keyBytes);
+        bitmap.copyPixelsToBuffer(frame);
+        frame.flip();
+        mWriter.post(new Runnable() {
+            @Override
+            public void run() {
+                long size = write(name, frame);
+                synchronized (DiskFrameCache.this) {
+                    mPending.remove(name);
+                    if (size > 0) {
+                        Long previous = mEntries.put(name, size);
+                        mSize += size - (previous == null ? 0 : previous);
+                        trimToSize(mMaxSize);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 写到临时文件后重命名
+     *
+     * @return 文件大小，失败时返回0
+     */
+    private long write(String name, ByteBuffer frame) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "write: can not create " + mDirectory);
+            return 0;
+        }
+        File temp = new File(mDirectory, name + "." + Thread.currentThread().getId() + "."
+                + System.nanoTime() + TEMP_EXTENSION);
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(temp);
+            FileChannel channel = outputStream.getChannel();
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            outputStream.close();
+            outputStream = null;
+            if (!temp.renameTo(new File(mDirectory, name))) {
+                throw new IOException("rename " + temp + " failed");
+            }
+            return frame.limit();
+        } catch (IOException e) {
+            Log.w(TAG, "write: failed", e);
+            closeQuietly(outputStream);
+            if (!temp.delete()) {
+                Log.w(TAG, "write: delete " + temp + " failed");
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 第一次访问时按修改时间恢复使用顺序，清理写入中断留下的临时文件
+     */
+    private void loadEntries() {
+        if (mIsLoaded) {
+            return;
+        }
+        mIsLoaded = true;
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File left, File right) {
+                long difference = left.lastModified() - right.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(FILE_EXTENSION)) {
+                mEntries.put(name, file.length());
+                mSize += file.length();
+            } else if (name.endsWith(TEMP_EXTENSION) && now - file.lastModified() > TEMP_EXPIRE_MILLIS) {
+                deleteFile(file);
+            }
+        }
+        trimToSize(mMaxSize);
+    }
+
+    private synchronized void remove(String name) {
+        Long size = mEntries.remove(name);
+        if (size != null) {
+            mSize -= size;
+        }
+        deleteFile(new File(mDirectory, name));
+    }
+
+    /**
+     * 删除最久未使用的帧，直到总字节数不超过maxSize
+     */
+    public synchronized void trimToSize(long maxSize) {
+        loadEntries();
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            iterator.remove();
+            mSize -= entry.getValue();
+            deleteFile(new File(mDirectory, entry.getKey()));
+        }
+    }
+
+    /**
+     * 删除所有缓存的帧
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized long getSize() {
+        loadEntries();
+        return mSize;
+    }
+
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DiskFrameCache[size=" + mSize + ", maxSize=" + mMaxSize + ", hits=" + mHitCount
+                + ", misses=" + mMissCount + "]";
+    }
+
+    private String getKey(String source, int width, int height, Bitmap.Config config) {
+        return source + "|" + width + "x" + height + "|" + config + mStamp;
+    }
+
+    private static String getFileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2 + FILE_EXTENSION.length());
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.append(FILE_EXTENSION).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int toCode(Bitmap.Config config) {
+        if (config == Bitmap.Config.ARGB_8888) {
+            return CONFIG_ARGB_8888;
+        }
+        if (config == Bitmap.Config.RGB_565) {
+            return CONFIG_RGB_565;
+        }
+        if (config == Bitmap.Config.ALPHA_8) {
+            return CONFIG_ALPHA_8;
+        }
+        return 0;
+    }
+
+    private static Bitmap.Config toConfig(int code) {
+        switch (code) {
+            case CONFIG_ARGB_8888:
+                return Bitmap.Config.ARGB_8888;
+            case CONFIG_RGB_565:
+                return Bitmap.Config.RGB_565;
+            case CONFIG_ALPHA_8:
+                return Bitmap.Config.ALPHA_8;
+            default:
+                return null;
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "deleteFile: failed " + file);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.w(TAG, "closeQuietly: failed", e);
+            }
+        }
+    }
+}
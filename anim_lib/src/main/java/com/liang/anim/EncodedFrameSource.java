@@ -0,0 +1,116 @@
+package com.liang.anim;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.util.Log;
+
+/**
+ * 通过BitmapFactory解码的序列帧来源，统一处理按绘制区域缩小解码、像素格式和inBitmap复用，
+ * 子类只需要按给定的解码参数解码
+ */
+public abstract class EncodedFrameSource implements FrameSource {
+    private static final String TAG = "EncodedFrameSource";
+
+    @Override
+    public int getFrameDuration(int index) {
+        return 0;
+    }
+
+    @Override
+    public Bitmap decode(int index, int width, int height, Bitmap.Config config, BitmapPool bitmapPool) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        decodeFrame(index, options);
+        options.inJustDecodeBounds = false;
+        applyTargetSize(options, width, height);
+        applyConfig(options, config);
+        bitmapPool.prepare(options);
+        Bitmap bitmap;
+        try {
+            bitmap = decodeFrame(index, options);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "decode: reuse bitmap failed", e);
+            discardInBitmap(options);
+            bitmap = decodeFrame(index, options);
+        }
+        return toConfig(bitmap, config, bitmapPool);
+    }
+
+    /**
+     * 按解码参数解码一帧，inJustDecodeBounds为true时只需取得尺寸
+     *
+     * @param index   帧下标
+     * @param options 解码参数
+     * @return 解码失败时返回null
+     */
+    protected abstract Bitmap decodeFrame(int index, BitmapFactory.Options options);
+
+    /**
+     * 按绘制区域设置采样率和缩放，先用inSampleSize按2的幂缩小，再通过密度缩放精确缩到绘制区域，
+     * 宽高按同一比例缩放，取缩放后仍能覆盖绘制区域的最小尺寸，不会放大原图
+     *
+     * @param options 已经通过inJustDecodeBounds取得原图尺寸的解码参数
+     * @param width   绘制区域宽，0表示按原图尺寸解码
+     * @param height  绘制区域高，0表示按原图尺寸解码
+     */
+    static void applyTargetSize(BitmapFactory.Options options, int width, int height) {
+        options.inSampleSize = 1;
+        options.inScaled = false;
+        if (width <= 0 || height <= 0 || options.outWidth <= 0 || options.outHeight <= 0) {
+            return;
+        }
+        float scale = Math.max(width / (float) options.outWidth, height / (float) options.outHeight);
+        if (scale >= 1) {
+            return;
+        }
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inSampleSize = sampleSize;
+        int sampledWidth = options.outWidth / sampleSize;
+        int sampledHeight = options.outHeight / sampleSize;
+        boolean fitWidth = width / (float) sampledWidth >= height / (float) sampledHeight;
+        int density = fitWidth ? sampledWidth : sampledHeight;
+        int targetDensity = fitWidth ? width : height;
+        if (density != targetDensity) {
+            options.inScaled = true;
+            options.inDensity = density;
+            options.inTargetDensity = targetDensity;
+        }
+    }
+
+    /**
+     * 解码器不能直接输出ALPHA_8，先按ARGB_8888解码再提取透明度
+     */
+    static void applyConfig(BitmapFactory.Options options, Bitmap.Config config) {
+        options.inPreferredConfig = config == Bitmap.Config.ALPHA_8 ? Bitmap.Config.ARGB_8888 : config;
+    }
+
+    /**
+     * 把解码结果的透明度复制到复用池中的ALPHA_8图片，解码用的图片归还复用池
+     */
+    static Bitmap toConfig(Bitmap bitmap, Bitmap.Config config, BitmapPool bitmapPool) {
+        if (bitmap == null || config != Bitmap.Config.ALPHA_8 || bitmap.getConfig() == Bitmap.Config.ALPHA_8) {
+            return bitmap;
+        }
+        Bitmap alpha = bitmapPool.obtain(bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.ALPHA_8);
+        alpha.eraseColor(Color.TRANSPARENT);
+        new Canvas(alpha).drawBitmap(bitmap, 0, 0, null);
+        bitmapPool.put(bitmap);
+        return alpha;
+    }
+
+    /**
+     * inBitmap无法用于当前图片（如低版本系统解码webp），不再放回复用池
+     */
+    static void discardInBitmap(BitmapFactory.Options options) {
+        if (options.inBitmap != null) {
+            options.inBitmap.recycle();
+            options.inBitmap = null;
+        }
+    }
+}
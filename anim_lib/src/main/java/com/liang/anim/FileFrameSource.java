@@ -0,0 +1,76 @@
+package com.liang.anim;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 磁盘上的序列帧，每个文件一帧，如下载后解压的动画资源
+ */
+public class FileFrameSource extends EncodedFrameSource {
+    private final String mName;
+    private final File[] mFiles;
+    private final String[] mKeys;
+
+    /**
+     * @param files 帧文件，按播放顺序排列
+     */
+    public FileFrameSource(File[] files) {
+        mFiles = files.clone();
+        mKeys = new String[mFiles.length];
+        long lastModified = 0;
+        long length = 0;
+        for (int i = 0; i < mFiles.length; i++) {
+            // 文件被替换后不再使用旧的缓存
+            mKeys[i] = "file:" + mFiles[i].getAbsolutePath() + "@" + mFiles[i].lastModified();
+            lastModified = Math.max(lastModified, mFiles[i].lastModified());
+            length += mFiles[i].length();
+        }
+        // 名称用于保存检测结果，文件被替换后需要重新检测
+        mName = mFiles.length == 0 ? "file:" : "file:" + mFiles[0].getAbsoluteFile().getParent() + "@" + lastModified
+                + "/" + length;
+    }
+
+    /**
+     * 按文件夹中的文件名自然顺序创建
+     *
+     * @param folder 序列帧文件夹
+     */
+    public static FileFrameSource list(File folder) throws IOException {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            throw new IOException(folder + " is not a directory");
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File left, File right) {
+                return NaturalOrder.getInstance().compare(left.getName(), right.getName());
+            }
+        });
+        return new FileFrameSource(files);
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public int getFrameCount() {
+        return mFiles.length;
+    }
+
+    @Override
+    public String getFrameKey(int index) {
+        return mKeys[index];
+    }
+
+    @Override
+    protected Bitmap decodeFrame(int index, BitmapFactory.Options options) {
+        return BitmapFactory.decodeFile(mFiles[index].getPath(), options);
+    }
+}
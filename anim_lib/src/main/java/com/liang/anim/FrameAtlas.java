@@ -0,0 +1,181 @@
+package com.liang.anim;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 序列帧合图索引，多帧打包在一张或几张大图中，整个序列只需解码一次大图，绘制时按区域截取。
+ * 索引文件为Assets资源文件夹下的atlas.json，格式如下：
+ * <pre>
+ * {
+ *   "width": 200, "height": 200,
+ *   "images": [{"file": "atlas_0.webp", "width": 2048, "height": 2048}],
+ *   "frames": [{"image": 0, "x": 0, "y": 0, "w": 200, "h": 200, "ox": 0, "oy": 0}]
+ * }
+ * </pre>
+ * width/height为单帧的完整尺寸，x/y/w/h为帧在大图中的区域，ox/oy为该区域在完整帧中的偏移，
+ * 省略w/h时使用整张大图，省略ox/oy时为0。
+ * 裁剪透明边框后的序列帧同样使用该索引：每帧一张只包含不透明区域的小图，ox/oy为裁剪偏移，
+ * image为-1表示完全透明的空帧，不需要解码，可以使用anim_packer模块的FrameTrimmer生成
+ */
+final class FrameAtlas {
+    static final String INDEX_FILE_NAME = "atlas.json";
+    static final int EMPTY_FRAME = -1;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final String[] mImages;
+    private final int[] mImageWidths;
+    private final int[] mImageHeights;
+    private final int[] mFrameImages;
+    private final Rect[] mFrameRects;
+    private final int[] mOffsetXs;
+    private final int[] mOffsetYs;
+
+    private FrameAtlas(int width, int height, int imageCount, int frameCount) {
+        mWidth = width;
+        mHeight = height;
+        mImages = new String[imageCount];
+        mImageWidths = new int[imageCount];
+        mImageHeights = new int[imageCount];
+        mFrameImages = new int[frameCount];
+        mFrameRects = new Rect[frameCount];
+        mOffsetXs = new int[frameCount];
+        mOffsetYs = new int[frameCount];
+    }
+
+    /**
+     * 解析索引文件
+     *
+     * @param inputStream 索引文件内容，调用者负责关闭
+     */
+    static FrameAtlas parse(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, length);
+        }
+        try {
+            JSONObject json = new JSONObject(outputStream.toString("UTF-8"));
+            JSONArray images = json.getJSONArray("images");
+            JSONArray frames = json.getJSONArray("frames");
+            FrameAtlas atlas = new FrameAtlas(json.getInt("width"), json.getInt("height"), images.length(),
+                    frames.length());
+            for (int i = 0; i < images.length(); i++) {
+                JSONObject image = images.getJSONObject(i);
+                atlas.mImages[i] = image.getString("file");
+                atlas.mImageWidths[i] = image.getInt("width");
+                atlas.mImageHeights[i] = image.getInt("height");
+            }
+            for (int i = 0; i < frames.length(); i++) {
+                JSONObject frame = frames.getJSONObject(i);
+                int image = frame.optInt("image", 0);
+                if (image == EMPTY_FRAME) {
+                    atlas.mFrameImages[i] = EMPTY_FRAME;
+                    atlas.mFrameRects[i] = new Rect();
+                    continue;
+                }
+                if (image < 0 || image >= images.length()) {
+                    throw new IOException("frame " + i + " references missing image " + image);
+                }
+                int x = frame.optInt("x", 0);
+                int y = frame.optInt("y", 0);
+                int w = frame.optInt("w", atlas.mImageWidths[image]);
+                int h = frame.optInt("h", atlas.mImageHeights[image]);
+                atlas.mFrameImages[i] = image;
+                atlas.mFrameRects[i] = new Rect(x, y, x + w, y + h);
+                atlas.mOffsetXs[i] = frame.optInt("ox", 0);
+                atlas.mOffsetYs[i] = frame.optInt("oy", 0);
+            }
+            return atlas;
+        } catch (JSONException e) {
+            throw new IOException("Invalid " + INDEX_FILE_NAME + ": " + e.getMessage());
+        }
+    }
+
+    int getFrameCount() {
+        return mFrameRects.length;
+    }
+
+    /**
+     * 帧所在的大图文件名
+     *
+     * @return 空帧返回null
+     */
+    String getImage(int index) {
+        int image = mFrameImages[index];
+        return image == EMPTY_FRAME ? null : mImages[image];
+    }
+
+    /**
+     * 是否为完全透明的空帧
+     */
+    boolean isEmptyFrame(int index) {
+        return index >= 0 && index < mFrameImages.length && mFrameImages[index] == EMPTY_FRAME;
+    }
+
+    /**
+     * 按绘制区域计算帧所在大图的解码尺寸，与{@link #getDestRect}使用同一缩放比例
+     *
+     * @param index      帧下标
+     * @param drawWidth  绘制区域宽，0表示按原图尺寸
+     * @param drawHeight 绘制区域高，0表示按原图尺寸
+     * @param outSize    输出解码宽高
+     */
+    void getImageTargetSize(int index, int drawWidth, int drawHeight, int[] outSize) {
+        int image = mFrameImages[index];
+        if (image == EMPTY_FRAME || drawWidth <= 0 || drawHeight <= 0) {
+            outSize[0] = 0;
+            outSize[1] = 0;
+            return;
+        }
+        float scale = Math.min(1, Math.max(drawWidth / (float) mWidth, drawHeight / (float) mHeight));
+        outSize[0] = Math.max(1, Math.round(mImageWidths[image] * scale));
+        outSize[1] = Math.max(1, Math.round(mImageHeights[image] * scale));
+    }
+
+    /**
+     * 帧在已解码大图中的区域
+     *
+     * @param index 帧下标
+     * @param image 已解码的大图，可能经过缩放
+     * @param out   输出区域
+     */
+    void getSourceRect(int index, Bitmap image, Rect out) {
+        Rect rect = mFrameRects[index];
+        int imageIndex = mFrameImages[index];
+        float scaleX = image.getWidth() / (float) mImageWidths[imageIndex];
+        float scaleY = image.getHeight() / (float) mImageHeights[imageIndex];
+        out.set(Math.round(rect.left * scaleX), Math.round(rect.top * scaleY),
+                Math.round(rect.right * scaleX), Math.round(rect.bottom * scaleY));
+    }
+
+    /**
+     * 帧在绘制区域中的位置
+     *
+     * @param index    帧下标
+     * @param drawRect 完整帧对应的绘制区域
+     * @param out      输出区域
+     */
+    void getDestRect(int index, Rect drawRect, Rect out) {
+        Rect rect = mFrameRects[index];
+        if (mFrameImages[index] == EMPTY_FRAME) {
+            out.setEmpty();
+            return;
+        }
+        float scaleX = drawRect.width() / (float) mWidth;
+        float scaleY = drawRect.height() / (float) mHeight;
+        int left = drawRect.left + Math.round(mOffsetXs[index] * scaleX);
+        int top = drawRect.top + Math.round(mOffsetYs[index] * scaleY);
+        out.set(left, top, left + Math.round(rect.width() * scaleX), top + Math.round(rect.height() * scaleY));
+    }
+}
@@ -0,0 +1,251 @@
+package com.liang.anim;
+
+import android.graphics.Bitmap;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 进程内共享的已解码帧缓存，按字节数限制大小，多个控件播放同一序列时只解码一次。
+ * 取出的帧需要通过{@link #release(Bitmap)}归还，被引用的帧不会被淘汰，
+ * 淘汰且无人引用的帧交给{@link BitmapPool}复用
+ */
+public final class FrameCache {
+    private static final FrameCache sInstance = new FrameCache((int) Math.min(Runtime.getRuntime().maxMemory() / 8,
+            Integer.MAX_VALUE), BitmapPool.getInstance());
+
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final IdentityHashMap<Bitmap, Entry> mBitmaps = new IdentityHashMap<>();
+    private final BitmapPool mBitmapPool;
+    private int mMaxSize;
+    private int mSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    /**
+     * @param maxSize    缓存最多保存的字节数
+     * @param bitmapPool 接收被淘汰帧的复用池
+     */
+    public FrameCache(int maxSize, BitmapPool bitmapPool) {
+        mMaxSize = maxSize;
+        mBitmapPool = bitmapPool;
+    }
+
+    /**
+     * 进程内共享的帧缓存
+     */
+    public static FrameCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * 取出缓存的帧并增加引用
+     *
+     * @return 未缓存时返回null
+     */
+    public synchronized Bitmap acquire(Key key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        entry.refCount++;
+        return entry.bitmap;
+    }
+
+    /**
+     * 缓存新解码的帧，调用者持有一次引用
+     *
+     * @return 实际缓存的帧，其它线程已先缓存同一帧时返回已有的帧，传入的帧会被放回复用池
+     */
+    public synchronized Bitmap put(Key key, Bitmap bitmap) {
+        if (bitmap == null) {
+            return null;
+        }
+        Entry entry = mEntries.get(key);
+        if (entry != null) {
+            if (entry.bitmap != bitmap) {
+                mBitmapPool.put(bitmap);
+            }
+            entry.refCount++;
+            return entry.bitmap;
+        }
+        entry = new Entry(bitmap, BitmapPool.getBitmapByteSize(bitmap));
+        entry.refCount = 1;
+        mEntries.put(key, entry);
+        mBitmaps.put(bitmap, entry);
+        mSize += entry.size;
+        trimToSize(mMaxSize);
+        return bitmap;
+    }
+
+    /**
+     * 归还取出的帧，不在缓存中的帧直接放回复用池
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        Entry entry = mBitmaps.get(bitmap);
+        if (entry == null) {
+            mBitmapPool.put(bitmap);
+            return;
+        }
+        entry.refCount = Math.max(0, entry.refCount - 1);
+        if (entry.refCount == 0) {
+            if (entry.evicted) {
+                mBitmaps.remove(bitmap);
+                mBitmapPool.put(bitmap);
+            } else if (mSize > mMaxSize) {
+                trimToSize(mMaxSize);
+            }
+        }
+    }
+
+    /**
+     * 淘汰最久未使用且无人引用的帧，直到不超过指定字节数
+     */
+    public synchronized void trimToSize(int maxSize) {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.refCount > 0) {
+                continue;
+            }
+            iterator.remove();
+            mBitmaps.remove(entry.bitmap);
+            mSize -= entry.size;
+            mEvictionCount++;
+            mBitmapPool.put(entry.bitmap);
+        }
+    }
+
+    /**
+     * 移除指定帧，仍被引用时在最后一次归还后放回复用池
+     */
+    public synchronized void remove(Key key) {
+        Entry entry = mEntries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        mSize -= entry.size;
+        if (entry.refCount > 0) {
+            entry.evicted = true;
+        } else {
+            mBitmaps.remove(entry.bitmap);
+            mBitmapPool.put(entry.bitmap);
+        }
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * 当前缓存占用的字节数
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        int total = mHitCount + mMissCount;
+        return "FrameCache[size=" + mSize + ",maxSize=" + mMaxSize + ",entries=" + mEntries.size() + ",hits="
+                + mHitCount + ",misses=" + mMissCount + ",hitRate=" + (total == 0 ? 0 : 100 * mHitCount / total) + "%]";
+    }
+
+    /**
+     * 缓存键，由帧来源、解码尺寸和解码格式组成
+     */
+    public static final class Key {
+        private final String mSource;
+        private final int mWidth;
+        private final int mHeight;
+        private final Bitmap.Config mConfig;
+
+        /**
+         * @param source 帧来源，如Assets路径或资源id
+         * @param width  解码宽度，0表示原始尺寸
+         * @param height 解码高度，0表示原始尺寸
+         * @param config 解码格式
+         */
+        public Key(String source, int width, int height, Bitmap.Config config) {
+            mSource = source;
+            mWidth = width;
+            mHeight = height;
+            mConfig = config;
+        }
+
+        public static Key assets(String assetsPath, int width, int height, Bitmap.Config config) {
+            return new Key("assets:" + assetsPath, width, height, config);
+        }
+
+        public static Key resource(int resId, int width, int height, Bitmap.Config config) {
+            return new Key("res:" + resId, width, height, config);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mWidth == key.mWidth && mHeight == key.mHeight && mConfig == key.mConfig
+                    && mSource.equals(key.mSource);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mSource.hashCode();
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            result = 31 * result + (mConfig != null ? mConfig.hashCode() : 0);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return mSource + "@" + mWidth + "x" + mHeight + "/" + mConfig;
+        }
+    }
+
+    private static final class Entry {
+        final Bitmap bitmap;
+        final int size;
+        int refCount;
+        boolean evicted;
+
+        Entry(Bitmap bitmap, int size) {
+            this.bitmap = bitmap;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.liang.anim;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * 按时间计算当前应绘制帧的播放时钟，以开始播放的单调时间为基准，不会因每帧的解码绘制耗时而累积延迟。
+ * API 16及以上在主线程跟随屏幕垂直同步信号计算，低版本使用主线程Handler定时。
+ * 绘制线程繁忙时不排队，下一次时钟回调直接跳到最新应绘制的帧。
+ * 设置{@link FrameTicker}后不再单独注册回调，由共用的节拍驱动
+ */
+final class FrameClock implements Runnable {
+    private static final long NANOS_PER_MILLIS = 1000000L;
+    private static final long FALLBACK_INTERVAL = 4;
+
+    private final Callback mCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private volatile VsyncCallback mVsyncCallback;
+    private volatile boolean mIsRunning;
+    private volatile long mStartNanos;
+    private volatile long[] mFrameEndNanos;
+    private volatile long mCycleNanos;
+    private volatile long mLastFrame;
+    private volatile long mDroppedFrames;
+    private volatile FrameTicker mTicker;
+    /**
+     * 已加入的节拍，只在主线程访问
+     */
+    private FrameTicker mAddedTicker;
+
+    FrameClock(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * 从第0帧开始计时，可在任意线程调用
+     *
+     * @param durations 从第0帧开始一个循环内每帧的时长，毫秒，之后按相同时长循环，所有帧时长相同时只需一个元素
+     */
+    void start(long[] durations) {
+        stop();
+        long[] frameEnds = new long[durations.length];
+        long cycle = 0;
+        for (int i = 0; i < durations.length; i++) {
+            cycle += Math.max(1, durations[i]) * NANOS_PER_MILLIS;
+            frameEnds[i] = cycle;
+        }
+        mFrameEndNanos = frameEnds;
+        mCycleNanos = cycle;
+        mStartNanos = System.nanoTime();
+        mLastFrame = -1;
+        mIsRunning = true;
+        mMainHandler.post(this);
+    }
+
+    void stop() {
+        mIsRunning = false;
+        mMainHandler.removeCallbacks(this);
+        if (mVsyncCallback != null) {
+            mVsyncCallback.cancel();
+        }
+    }
+
+    boolean isRunning() {
+        return mIsRunning;
+    }
+
+    /**
+     * 设置共用的节拍，只在主线程调用
+     *
+     * @param ticker 节拍，null表示单独注册回调
+     */
+    void setTicker(FrameTicker ticker) {
+        if (mTicker == ticker) {
+            return;
+        }
+        mTicker = ticker;
+        mMainHandler.removeCallbacks(this);
+        if (mVsyncCallback != null) {
+            mVsyncCallback.cancel();
+        }
+        if (mIsRunning) {
+            mMainHandler.post(this);
+        }
+    }
+
+    FrameTicker getTicker() {
+        return mTicker;
+    }
+
+    /**
+     * 被节拍移除，之后重新开始计时时需要再次加入
+     */
+    void onTickerRemoved(FrameTicker ticker) {
+        if (mAddedTicker == ticker) {
+            mAddedTicker = null;
+        }
+    }
+
+    /**
+     * 错过绘制时间而被跳过的帧数
+     */
+    long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    void resetDroppedFrames() {
+        mDroppedFrames = 0;
+    }
+
+    @Override
+    public void run() {
+        tick(System.nanoTime());
+    }
+
+    void tick(long frameTimeNanos) {
+        if (!mIsRunning) {
+            return;
+        }
+        long[] frameEnds = mFrameEndNanos;
+        long cycle = mCycleNanos;
+        long frame = getFrameAt(Math.max(0, frameTimeNanos - mStartNanos), frameEnds, cycle);
+        if (frame > mLastFrame && mCallback.onFrameDue(frame)) {
+            if (mLastFrame >= 0) {
+                mDroppedFrames += frame - mLastFrame - 1;
+            }
+            mLastFrame = frame;
+        }
+        if (!mIsRunning) {
+            return;
+        }
+        FrameTicker ticker = mTicker;
+        if (ticker != null) {
+            if (mAddedTicker != ticker) {
+                mAddedTicker = ticker;
+                ticker.add(this);
+            }
+            return;
+        }
+        long nextFrameNanos = mStartNanos + getFrameStart(mLastFrame + 1, frameEnds, cycle);
+        long delay = Math.max(0, (nextFrameNanos - System.nanoTime()) / NANOS_PER_MILLIS);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (mVsyncCallback == null) {
+                mVsyncCallback = new VsyncCallback();
+            }
+            mVsyncCallback.schedule(delay);
+        } else {
+            mMainHandler.postDelayed(this, Math.max(FALLBACK_INTERVAL, delay));
+        }
+    }
+
+    /**
+     * 计时开始后经过elapsed纳秒时应绘制的帧序号
+     */
+    static long getFrameAt(long elapsed, long[] frameEnds, long cycle) {
+        long cycles = elapsed / cycle;
+        long remainder = elapsed % cycle;
+        int low = 0;
+        int high = frameEnds.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (frameEnds[middle] > remainder) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return cycles * frameEnds.length + low;
+    }
+
+    /**
+     * 帧序号对应的开始时间，相对计时开始的纳秒数
+     */
+    static long getFrameStart(long frame, long[] frameEnds, long cycle) {
+        int index = (int) (frame % frameEnds.length);
+        return frame / frameEnds.length * cycle + (index == 0 ? 0 : frameEnds[index - 1]);
+    }
+
+    /**
+     * 时钟回调，在主线程调用
+     */
+    interface Callback {
+        /**
+         * 某一帧到了绘制时间
+         *
+         * @param frame 从开始计时算起的帧序号
+         * @return 绘制线程繁忙无法接收时返回false，下一次回调会跳到最新的帧
+         */
+        boolean onFrameDue(long frame);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private final class VsyncCallback implements Choreographer.FrameCallback {
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+
+        void schedule(long delay) {
+            mChoreographer.removeFrameCallback(this);
+            mChoreographer.postFrameCallbackDelayed(this, delay);
+        }
+
+        void cancel() {
+            mChoreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            tick(frameTimeNanos);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.liang.anim;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Log;
+
+/**
+ * 合并重复帧前每帧相对上一帧发生变化的区域，首帧的上一帧为最后一帧。
+ * 加载时在后台逐像素比较相邻两帧计算，区域使用原图像素坐标，绘制时由{@link DirtyRegions}映射到绘制区域。
+ * 检测结果保存在SharedPreferences中，键与{@link FrameFormat#getKey(Context, String, int)}相同
+ */
+final class FrameDiffs {
+    private static final String TAG = "FrameDiffs";
+    private static final String PREFERENCES_NAME = "sequence_frame_diffs";
+    private static final String SEPARATOR = "|";
+    /**
+     * 无法比较（尺寸不同或解码失败）的帧，需要整帧重绘
+     */
+    private static final String UNKNOWN = "*";
+
+    private final int mWidth;
+    private final int mHeight;
+    private final Rect[] mRects;
+
+    private FrameDiffs(int width, int height, Rect[] rects) {
+        mWidth = width;
+        mHeight = height;
+        mRects = rects;
+    }
+
+    /**
+     * 计算区域时的帧宽，即第一帧原图的宽
+     */
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    int getFrameCount() {
+        return mRects.length;
+    }
+
+    /**
+     * @return 需要整帧重绘时返回null，两帧完全相同时返回空区域
+     */
+    Rect get(int index) {
+        return mRects[index];
+    }
+
+    /**
+     * 读取已保存的检测结果
+     *
+     * @return 没有检测过时返回null
+     */
+    static FrameDiffs load(Context context, String key, int frameCount) {
+        String value = getPreferences(context).getString(key, null);
+        if (value == null) {
+            return null;
+        }
+        // 格式为“宽x高|每帧的left,top,right,bottom”，空字符串表示没有变化
+        try {
+            String[] parts = value.split("\\" + SEPARATOR, -1);
+            if (parts.length != frameCount + 1) {
+                Log.w(TAG, "load: invalid value " + value);
+                return null;
+            }
+            int x = parts[0].indexOf('x');
+            int width = Integer.parseInt(parts[0].substring(0, x));
+            int height = Integer.parseInt(parts[0].substring(x + 1));
+            Rect[] rects = new Rect[frameCount];
+            for (int index = 0; index < frameCount; index++) {
+                String part = parts[index + 1];
+                if (part.equals(UNKNOWN)) {
+                    continue;
+                }
+                rects[index] = new Rect();
+                if (!part.isEmpty()) {
+                    String[] edges = part.split(",");
+                    rects[index].set(Integer.parseInt(edges[0]), Integer.parseInt(edges[1]),
+                            Integer.parseInt(edges[2]), Integer.parseInt(edges[3]));
+                }
+            }
+            return new FrameDiffs(width, height, rects);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "load: invalid value " + value);
+            return null;
+        }
+    }
+
+    static void save(Context context, String key, FrameDiffs diffs) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(diffs.mWidth).append('x').append(diffs.mHeight);
+        for (Rect rect : diffs.mRects) {
+            builder.append(SEPARATOR);
+            if (rect == null) {
+                builder.append(UNKNOWN);
+            } else if (!rect.isEmpty()) {
+                builder.append(rect.left).append(',').append(rect.top).append(',')
+                        .append(rect.right).append(',').append(rect.bottom);
+            }
+        }
+        getPreferences(context).edit().putString(key, builder.toString()).apply();
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * 逐帧比较相邻两帧，所有帧都检测完后得出结果，没有比较过的帧按整帧重绘
+     */
+    static final class Inspector {
+        private final Rect[] mRects;
+        private int mWidth;
+        private int mHeight;
+        private int[] mPreviousRow = new int[0];
+        private int[] mCurrentRow = new int[0];
+
+        Inspector(int frameCount) {
+            mRects = new Rect[frameCount];
+        }
+
+        /**
+         * 帧标识与上一帧相同，内容一定相同，不需要解码
+         */
+        void inspectUnchanged(int index) {
+            mRects[index] = new Rect();
+        }
+
+        /**
+         * 逐像素比较一帧与上一帧
+         *
+         * @param previous 按原图尺寸解码的上一帧
+         * @param current  按原图尺寸解码的当前帧
+         */
+        void inspect(int index, Bitmap previous, Bitmap current) {
+            if (mWidth == 0) {
+                mWidth = current.getWidth();
+                mHeight = current.getHeight();
+            }
+            int width = current.getWidth();
+            int height = current.getHeight();
+            if (width != mWidth || height != mHeight
+                    || previous.getWidth() != width || previous.getHeight() != height) {
+                return;
+            }
+            if (mCurrentRow.length < width) {
+                mPreviousRow = new int[width];
+                mCurrentRow = new int[width];
+            }
+            int left = width;
+            int top = height;
+            int right = -1;
+            int bottom = -1;
+            for (int y = 0; y < height; y++) {
+                previous.getPixels(mPreviousRow, 0, width, 0, y, width, 1);
+                current.getPixels(mCurrentRow, 0, width, 0, y, width, 1);
+                int x = 0;
+                while (x < width && mPreviousRow[x] == mCurrentRow[x]) {
+                    x++;
+                }
+                if (x == width) {
+                    continue;
+                }
+                int end = width - 1;
+                while (end > x && mPreviousRow[end] == mCurrentRow[end]) {
+                    end--;
+                }
+                left = Math.min(left, x);
+                right = Math.max(right, end);
+                top = Math.min(top, y);
+                bottom = y;
+            }
+            mRects[index] = right < 0 ? new Rect() : new Rect(left, top, right + 1, bottom + 1);
+        }
+
+        /**
+         * @return 没有成功比较过任何一帧时返回null
+         */
+        FrameDiffs getResult() {
+            return mWidth == 0 ? null : new FrameDiffs(mWidth, mHeight, mRects);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.liang.anim;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+/**
+ * 序列中内容相同的帧，加载时按解码后的像素摘要找出每帧第一次出现的下标，
+ * 连续相同的帧由{@link DedupedFrameSource}合并为一帧，不连续的相同帧共用解码结果。
+ * 检测结果保存在SharedPreferences中，键与{@link FrameFormat#getKey(Context, String, int)}相同
+ */
+final class FrameDuplicates {
+    private static final String TAG = "FrameDuplicates";
+    private static final String PREFERENCES_NAME = "sequence_frame_duplicates";
+    private static final String SEPARATOR = ",";
+
+    private FrameDuplicates() {
+    }
+
+    /**
+     * 读取已保存的检测结果
+     *
+     * @return 每帧第一次出现的下标，没有检测过时返回null
+     */
+    static int[] load(Context context, String key, int frameCount) {
+        String value = getPreferences(context).getString(key, null);
+        if (value == null) {
+            return null;
+        }
+        int[] firstIndexes = new int[frameCount];
+        for (int index = 0; index < frameCount; index++) {
+            firstIndexes[index] = index;
+        }
+        if (value.isEmpty()) {
+            return firstIndexes;
+        }
+        // 只保存重复的帧，格式为“下标:第一次出现的下标”
+        try {
+            for (String pair : value.split(SEPARATOR)) {
+                int colon = pair.indexOf(':');
+                int index = Integer.parseInt(pair.substring(0, colon));
+                int firstIndex = Integer.parseInt(pair.substring(colon + 1));
+                if (index >= frameCount || firstIndex >= index) {
+                    Log.w(TAG, "load: invalid value " + value);
+                    return null;
+                }
+                firstIndexes[index] = firstIndex;
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "load: invalid value " + value);
+            return null;
+        }
+        return firstIndexes;
+    }
+
+    static void save(Context context, String key, int[] firstIndexes) {
+        StringBuilder builder = new StringBuilder();
+        for (int index = 0; index < firstIndexes.length; index++) {
+            if (firstIndexes[index] == index) {
+                continue;
+            }
+            if (builder.length() > 0) {
+                builder.append(SEPARATOR);
+            }
+            builder.append(index).append(':').append(firstIndexes[index]);
+        }
+        getPreferences(context).edit().putString(key, builder.toString()).apply();
+    }
+
+    static boolean hasDuplicates(int[] firstIndexes) {
+        for (int index = 0; index < firstIndexes.length; index++) {
+            if (firstIndexes[index] != index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * 逐帧计算像素摘要，所有帧都检测完后得出结果
+     */
+    static final class Inspector {
+        private final int[] mFirstIndexes;
+        private final HashMap<String, Integer> mDigests = new HashMap<>();
+        private MessageDigest mMessageDigest;
+        private ByteBuffer mPixels = ByteBuffer.allocate(0);
+
+        Inspector(int frameCount) {
+            mFirstIndexes = new int[frameCount];
+            for (int index = 0; index < frameCount; index++) {
+                mFirstIndexes[index] = index;
+            }
+            try {
+                mMessageDigest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                Log.w(TAG, "Inspector: MD5 is not supported", e);
+            }
+        }
+
+        /**
+         * 检测一帧
+         *
+         * @param bitmap 按原图尺寸解码的帧，null表示解码失败，不与其他帧合并
+         */
+        void inspect(int index, Bitmap bitmap) {
+            if (mMessageDigest == null || bitmap == null || bitmap.isRecycled()) {
+                return;
+            }
+            int size = bitmap.getRowBytes() * bitmap.getHeight();
+            if (mPixels.capacity() < size) {
+                mPixels = ByteBuffer.allocate(size);
+            }
+            mPixels.clear();
+            bitmap.copyPixelsToBuffer(mPixels);
+            mMessageDigest.reset();
+            mMessageDigest.update(mPixels.array(), 0, mPixels.position());
+            byte[] digest = mMessageDigest.digest();
+            StringBuilder builder = new StringBuilder(digest.length * 2 + 16);
+            builder.append(bitmap.getWidth()).append('x').append(bitmap.getHeight()).append(bitmap.getConfig())
+                    .append('/');
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            markFirst(index, builder.toString());
+        }
+
+        /**
+         * 帧标识与之前某帧相同时内容一定相同，不需要解码，与那一帧对应到同一个第一次出现的下标
+         *
+         * @param sameIndex 帧标识相同且已经检测过的帧
+         */
+        void inspectSameAs(int index, int sameIndex) {
+            mFirstIndexes[index] = mFirstIndexes[sameIndex];
+        }
+
+        int[] getResult() {
+            return mFirstIndexes;
+        }
+
+        private void markFirst(int index, String digest) {
+            Integer firstIndex = mDigests.get(digest);
+            if (firstIndex == null) {
+                mDigests.put(digest, index);
+            } else {
+                mFirstIndexes[index] = firstIndex;
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.liang.anim;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.Log;
+
+/**
+ * 序列帧的像素格式，检测一次整个序列后选出能完整表示内容的最省内存的格式：
+ * 全部不透明时使用RGB_565，只有一种颜色、透明度不同的遮罩使用ALPHA_8并在绘制时用画笔着色，其余使用ARGB_8888。
+ * 帧需要通过inBitmap复用且需要读取像素比较变化区域，不使用HARDWARE格式。
+ * 检测结果保存在SharedPreferences中，应用更新前再次加载同一序列不再检测
+ */
+final class FrameFormat {
+    private static final String TAG = "FrameFormat";
+    private static final String PREFERENCES_NAME = "sequence_frame_format";
+    private static final String ALPHA_8_PREFIX = "ALPHA_8:";
+    static final FrameFormat DEFAULT = new FrameFormat(Bitmap.Config.ARGB_8888, Color.BLACK);
+
+    private final Bitmap.Config mConfig;
+    private final int mTintColor;
+
+    private FrameFormat(Bitmap.Config config, int tintColor) {
+        mConfig = config;
+        mTintColor = tintColor;
+    }
+
+    Bitmap.Config getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * ALPHA_8格式绘制时使用的颜色
+     */
+    int getTintColor() {
+        return mTintColor;
+    }
+
+    /**
+     * 读取已保存的检测结果
+     *
+     * @param key 序列标识，见{@link #getKey(Context, String, int)}
+     * @return 没有检测过时返回null
+     */
+    static FrameFormat load(Context context, String key) {
+        String value = getPreferences(context).getString(key, null);
+        if (value == null) {
+            return null;
+        }
+        if (value.equals(Bitmap.Config.RGB_565.name())) {
+            return new FrameFormat(Bitmap.Config.RGB_565, Color.BLACK);
+        }
+        if (value.startsWith(ALPHA_8_PREFIX)) {
+            try {
+                return new FrameFormat(Bitmap.Config.ALPHA_8,
+                        (int) Long.parseLong(value.substring(ALPHA_8_PREFIX.length()), 16));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "load: invalid value " + value);
+                return null;
+            }
+        }
+        return DEFAULT;
+    }
+
+    static void save(Context context, String key, FrameFormat format) {
+        String value = format.mConfig == Bitmap.Config.ALPHA_8
+                ? ALPHA_8_PREFIX + Integer.toHexString(format.mTintColor) : format.mConfig.name();
+        getPreferences(context).edit().putString(key, value).apply();
+    }
+
+    /**
+     * 生成保存检测结果的键，应用更新后资源可能变化，需要重新检测
+     *
+     * @param source     序列来源标识，如Assets路径，文件类来源包含修改时间，文件被替换后需要重新检测
+     * @param frameCount 帧数
+     */
+    static String getKey(Context context, String source, int frameCount) {
+        long updateTime = 0;
+        try {
+            updateTime = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "getKey: package not found", e);
+        }
+        return source + "#" + frameCount + "@" + updateTime;
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * 逐帧检测像素，所有帧都检测完后得出格式
+     */
+    static final class Inspector {
+        private boolean mIsOpaque = true;
+        private boolean mIsMonochrome = true;
+        private int mTint;
+        private int mTintAlpha;
+        private int[] mRow = new int[0];
+
+        /**
+         * 检测一帧
+         *
+         * @return 已经确定只能使用ARGB_8888时返回false，不需要再检测后续帧
+         */
+        boolean inspect(Bitmap bitmap) {
+            if (bitmap == null || bitmap.isRecycled()) {
+                return isReducible();
+            }
+            if (!bitmap.hasAlpha()) {
+                mIsMonochrome = false;
+                return isReducible();
+            }
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            if (mRow.length < width) {
+                mRow = new int[width];
+            }
+            for (int y = 0; y < height && isReducible(); y++) {
+                bitmap.getPixels(mRow, 0, width, 0, y, width, 1);
+                for (int x = 0; x < width; x++) {
+                    int color = mRow[x];
+                    int alpha = color >>> 24;
+                    if (alpha != 0xff) {
+                        mIsOpaque = false;
+                    }
+                    if (mIsMonochrome && alpha != 0) {
+                        inspectTint(color, alpha);
+                    }
+                }
+            }
+            return isReducible();
+        }
+
+        FrameFormat getResult() {
+            if (mIsOpaque) {
+                return new FrameFormat(Bitmap.Config.RGB_565, Color.BLACK);
+            }
+            if (mIsMonochrome) {
+                return new FrameFormat(Bitmap.Config.ALPHA_8, mTint | 0xff000000);
+            }
+            return DEFAULT;
+        }
+
+        private boolean isReducible() {
+            return mIsOpaque || mIsMonochrome;
+        }
+
+        /**
+         * 读取的颜色是去掉预乘后的值，透明度越低误差越大，允许预乘后相差1
+         */
+        private void inspectTint(int color, int alpha) {
+            if (mTintAlpha == 0) {
+                mTint = color & 0xffffff;
+                mTintAlpha = alpha;
+                return;
+            }
+            int tolerance = Math.min(alpha, mTintAlpha);
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int difference = Math.abs(((color >> shift) & 0xff) - ((mTint >> shift) & 0xff));
+                if (difference * tolerance > 0xff) {
+                    mIsMonochrome = false;
+                    return;
+                }
+            }
+            if (alpha > mTintAlpha) {
+                mTint = color & 0xffffff;
+                mTintAlpha = alpha;
+            }
+        }
+    }
+}
@@ -0,0 +1,572 @@
+package com.liang.anim;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link SequenceFrameView}和{@link SequenceFrameDrawable}共用的取帧流程：
+ * 当前序列的快照、内存缓存、磁盘缓存、按绘制区域解码、像素格式检测，以及按来源计算每帧时长。
+ * 除设置外的方法可在绘制线程和预解码线程同时调用
+ */
+final class FrameLoader {
+    private static final String TAG = "FrameLoader";
+
+    private final AtomicReference<FrameSnapshot> mFrames = new AtomicReference<>(FrameSnapshot.EMPTY);
+    private final FrameMetrics mMetrics;
+    private volatile BitmapPool mBitmapPool = BitmapPool.getInstance();
+    private volatile FrameCache mFrameCache = FrameCache.getInstance();
+    private volatile DiskFrameCache mDiskCache;
+    private volatile int mTargetWidth;
+    private volatile int mTargetHeight;
+
+    FrameLoader(FrameMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * 按Assets资源文件夹中的内容选择来源：有预解码容器文件时按容器加载，有合图索引时按合图加载，
+     * 只有一个png文件时按APNG加载，否则每个文件一帧
+     *
+     * @param assetManager     资源管理器
+     * @param assetsFolderPath Assets资源文件夹路径
+     */
+    static FrameSource openAssets(AssetManager assetManager, String assetsFolderPath) throws IOException {
+        String[] paths = AssetIndex.getInstance().list(assetManager, assetsFolderPath);
+        for (String path : paths) {
+            if (path.endsWith(RawFrameContainer.FILE_EXTENSION)) {
+                String assetsPath = assetsFolderPath + "/" + path;
+                return RawFrameContainer.open(assetsPath, assetManager.openFd(assetsPath));
+            }
+        }
+        for (String path : paths) {
+            if (FrameAtlas.INDEX_FILE_NAME.equals(path)) {
+                InputStream inputStream = assetManager.open(assetsFolderPath + "/" + path);
+                try {
+                    return new AtlasFrameSource(assetManager, assetsFolderPath, FrameAtlas.parse(inputStream));
+                } finally {
+                    try {
+                        inputStream.close();
+                    } catch (IOException e) {
+                        Log.w(TAG, "openAssets: close failed", e);
+                    }
+                }
+            }
+        }
+        if (paths.length == 1 && paths[0].endsWith(".png")) {
+            return ApngFrameSource.open(assetManager, assetsFolderPath + "/" + paths[0]);
+        }
+        return new AssetsFrameSource(assetManager, assetsFolderPath, paths);
+    }
+
+    /**
+     * 来源是否可以按指定的像素格式输出，预解码容器的像素格式由文件决定
+     */
+    static boolean isConfigurable(FrameSource source) {
+        return source instanceof EncodedFrameSource || source instanceof ApngFrameSource;
+    }
+
+    FrameSnapshot getFrames() {
+        return mFrames.get();
+    }
+
+    /**
+     * 换用新的序列
+     *
+     * @return 新序列的快照，用于{@link #analyze}
+     */
+    FrameSnapshot setSource(FrameSource source) {
+        FrameSnapshot frames = source == null ? FrameSnapshot.EMPTY : FrameSnapshot.of(source);
+        mFrames.set(frames);
+        return frames;
+    }
+
+    FrameSource getSource() {
+        return mFrames.get().getSource();
+    }
+
+    int getFrameCount() {
+        return mFrames.get().getFrameCount();
+    }
+
+    BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    void setBitmapPool(BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool == null ? BitmapPool.getInstance() : bitmapPool;
+    }
+
+    FrameCache getFrameCache() {
+        return mFrameCache;
+    }
+
+    /**
+     * 换用其他缓存前需要先把取出的帧归还给原来的缓存
+     */
+    void setFrameCache(FrameCache frameCache) {
+        mFrameCache = frameCache == null ? FrameCache.getInstance() : frameCache;
+    }
+
+    DiskFrameCache getDiskCache() {
+        return mDiskCache;
+    }
+
+    void setDiskCache(DiskFrameCache diskCache) {
+        mDiskCache = diskCache;
+    }
+
+    /**
+     * 设置解码尺寸
+     *
+     * @return 尺寸是否变化，变化后已预解码的帧需要丢弃
+     */
+    boolean setTargetSize(int width, int height) {
+        if (width == mTargetWidth && height == mTargetHeight) {
+            return false;
+        }
+        mTargetWidth = width;
+        mTargetHeight = height;
+        return true;
+    }
+
+    /**
+     * 取出某一帧，优先使用共享缓存，用完后需要通过{@link #release(Bitmap)}归还
+     *
+     * @param index 帧下标
+     */
+    Bitmap decode(int index) {
+        FrameSnapshot frames = mFrames.get();
+        FrameSource source = frames.getSource();
+        Bitmap.Config config = frames.getFormat().getConfig();
+        FrameCache frameCache = mFrameCache;
+        BitmapPool bitmapPool = mBitmapPool;
+        int width = mTargetWidth;
+        int height = mTargetHeight;
+        if (source == null || index < 0 || index >= source.getFrameCount()) {
+            return null;
+        }
+        String frameKey = source.getFrameKey(index);
+        FrameCache.Key key = frameKey == null ? null : getCacheKey(source, frameKey, width, height, config);
+        Bitmap bitmap = key == null ? null : frameCache.acquire(key);
+        if (bitmap != null) {
+            mMetrics.recordDecode(0, true);
+            return bitmap;
+        }
+        long start = System.nanoTime();
+        DiskFrameCache diskCache = key != null && isDiskCacheable(source) ? mDiskCache : null;
+        bitmap = diskCache == null ? null : diskCache.get(frameKey, width, height, config, bitmapPool);
+        if (bitmap == null) {
+            bitmap = source.decode(index, width, height, config, bitmapPool);
+            if (diskCache != null) {
+                diskCache.put(frameKey, width, height, config, bitmap);
+            }
+        }
+        mMetrics.recordDecode(System.nanoTime() - start, false);
+        return key == null ? bitmap : frameCache.put(key, bitmap);
+    }
+
+    /**
+     * 只从内存缓存取出某一帧，不解码，可在主线程调用，用完后需要通过{@link #release(Bitmap)}归还
+     *
+     * @param frames 取帧的序列，可以不是当前序列
+     * @param width  解码时的绘制区域宽
+     * @param height 解码时的绘制区域高
+     * @return 未缓存时返回null
+     */
+    Bitmap peek(FrameSnapshot frames, int index, int width, int height) {
+        FrameSource source = frames.getSource();
+        if (source == null || index < 0 || index >= source.getFrameCount()) {
+            return null;
+        }
+        String frameKey = source.getFrameKey(index);
+        if (frameKey == null) {
+            return null;
+        }
+        return mFrameCache.acquire(getCacheKey(source, frameKey, width, height, frames.getFormat().getConfig()));
+    }
+
+    /**
+     * 预解码容器按文件中保存的尺寸和格式复制像素，不随绘制区域和检测出的格式变化，
+     * 按0x0和容器的格式缓存，不同尺寸的控件共用同一份像素
+     */
+    private static FrameCache.Key getCacheKey(FrameSource source, String frameKey, int width, int height,
+                                              Bitmap.Config config) {
+        FrameSource original = unwrap(source);
+        if (original instanceof RawFrameContainer) {
+            return new FrameCache.Key(frameKey, 0, 0, ((RawFrameContainer) original).getConfig());
+        }
+        return new FrameCache.Key(frameKey, width, height, config);
+    }
+
+    /**
+     * 只有帧标识随内容变化的来源才写入磁盘缓存，内存来源的标识由调用者指定，
+     * 下次启动时同一标识可能对应不同的图片；预解码容器和图集不需要解码
+     */
+    private static boolean isDiskCacheable(FrameSource source) {
+        FrameSource original = unwrap(source);
+        return original instanceof EncodedFrameSource && !(original instanceof MemoryFrameSource);
+    }
+
+    void release(Bitmap bitmap) {
+        mFrameCache.release(bitmap);
+    }
+
+    /**
+     * 帧的显示时长，来源没有指定时使用默认时长
+     *
+     * @return 毫秒
+     */
+    long getFrameDuration(int index, long defaultDuration) {
+        FrameSource source = mFrames.get().getSource();
+        if (source instanceof DedupedFrameSource && index >= 0 && index < source.getFrameCount()) {
+            return ((DedupedFrameSource) source).getFrameDuration(index, defaultDuration);
+        }
+        int duration = source != null && index >= 0 && index < source.getFrameCount()
+                ? source.getFrameDuration(index) : 0;
+        return duration > 0 ? duration : defaultDuration;
+    }
+
+    /**
+     * 从start帧开始一个循环内每帧的时长，所有帧时长相同时只返回一个元素，用于{@link FrameClock#start(long[])}
+     */
+    long[] getClockDurations(int start, long defaultDuration) {
+        int frameCount = getFrameCount();
+        if (frameCount == 0) {
+            return new long[]{defaultDuration};
+        }
+        long[] durations = new long[frameCount];
+        boolean isUniform = true;
+        for (int i = 0; i < frameCount; i++) {
+            durations[i] = getFrameDuration((start + i) % frameCount, defaultDuration);
+            isUniform &= durations[i] == durations[0];
+        }
+        return isUniform ? new long[]{durations[0]} : durations;
+    }
+
+    /**
+     * 分析新设置的序列：选择像素格式、合并重复帧、计算每帧变化区域。有保存的结果时直接使用，
+     * 否则在后台低优先级线程中逐帧解码分析，每个任务只分析一帧，不占用绘制线程，
+     * 完成前按ARGB_8888解码、不合并、整帧重绘
+     *
+     * @param frames       新设置的序列
+     * @param selectFormat 是否选择像素格式
+     * @param dedupe       是否合并重复帧
+     * @param dirtyRegion  是否计算变化区域
+     */
+    void analyze(final Context context, FrameSnapshot frames, final boolean selectFormat, final boolean dedupe,
+                 final boolean dirtyRegion) {
+        final FrameSnapshot analyzed = applySaved(context, frames, selectFormat, dedupe, dirtyRegion);
+        if (analyzed == null) {
+            return;
+        }
+        final FrameScheduler.Lane lane = FrameScheduler.getInstance().newBackgroundLane();
+        lane.post(new Runnable() {
+            private Inspection mInspection;
+
+            @Override
+            public void run() {
+                boolean hasNext = false;
+                try {
+                    if (mInspection == null) {
+                        mInspection = new Inspection(context, analyzed, selectFormat, dedupe, dirtyRegion);
+                    }
+                    hasNext = mInspection.next();
+                } finally {
+                    if (hasNext) {
+                        // 让出线程给其他序列的分析和预加载
+                        lane.post(this);
+                    } else {
+                        lane.quit();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 应用保存的分析结果，没有保存的部分由调用者在自己的队列中逐帧分析，用于预加载
+     *
+     * @return 还需要逐帧分析时返回分析进度，否则返回null
+     */
+    Inspection prepareInspection(Context context, FrameSnapshot frames, boolean selectFormat, boolean dedupe,
+                                 boolean dirtyRegion) {
+        FrameSnapshot analyzed = applySaved(context, frames, selectFormat, dedupe, dirtyRegion);
+        return analyzed == null ? null : new Inspection(context, analyzed, selectFormat, dedupe, dirtyRegion);
+    }
+
+    /**
+     * 应用保存的分析结果
+     *
+     * @param frames 新设置的序列，也可以是已合并重复帧的当前序列，用于之后开启计算变化区域
+     * @return 还需要逐帧分析时返回应用后的快照，已全部应用或序列已被替换时返回null
+     */
+    private FrameSnapshot applySaved(Context context, FrameSnapshot frames, boolean selectFormat, boolean dedupe,
+                                     boolean dirtyRegion) {
+        FrameSource source = unwrap(frames.getSource());
+        String name = source == null ? null : source.getName();
+        if (name == null) {
+            return null;
+        }
+        selectFormat &= isConfigurable(source);
+        dedupe &= isDedupable(source);
+        dirtyRegion &= isDiffable(source) && frames.getDiffs() == null;
+        if (!selectFormat && !dedupe && !dirtyRegion) {
+            return null;
+        }
+        int frameCount = source.getFrameCount();
+        String key = getSavedKey(context, source);
+        FrameFormat format = selectFormat && key != null ? FrameFormat.load(context, key) : null;
+        int[] firstIndexes = dedupe && key != null ? FrameDuplicates.load(context, key, frameCount) : null;
+        FrameDiffs diffs = dirtyRegion && key != null ? FrameDiffs.load(context, key, frameCount) : null;
+        FrameSnapshot analyzed = apply(frames, format, firstIndexes, diffs);
+        if (analyzed != frames && !mFrames.compareAndSet(frames, analyzed)) {
+            return null;
+        }
+        return (selectFormat && format == null) || (dedupe && firstIndexes == null)
+                || (dirtyRegion && diffs == null) ? analyzed : null;
+    }
+
+    /**
+     * 合图帧与合图区域一一对应；APNG按顺序合成，跳回之前的帧需要重新合成，导出时一般已经合并为帧时长
+     */
+    private static boolean isDedupable(FrameSource source) {
+        return !(source instanceof AtlasFrameSource) && !(source instanceof ApngFrameSource);
+    }
+
+    /**
+     * 合图序列按帧区域计算变化区域，不需要比较像素
+     */
+    private static boolean isDiffable(FrameSource source) {
+        return !(source instanceof AtlasFrameSource);
+    }
+
+    /**
+     * 保存分析结果的键
+     *
+     * @return 来源标识由调用者指定、不随内容变化时返回null，每次重新分析，不保存结果
+     */
+    private static String getSavedKey(Context context, FrameSource source) {
+        if (source instanceof MemoryFrameSource) {
+            return null;
+        }
+        return FrameFormat.getKey(context, source.getName(), source.getFrameCount());
+    }
+
+    /**
+     * 合并重复帧前的来源
+     */
+    static FrameSource unwrap(FrameSource source) {
+        return source instanceof DedupedFrameSource ? ((DedupedFrameSource) source).getSource() : source;
+    }
+
+    /**
+     * @param format       检测出的像素格式，null表示不变
+     * @param firstIndexes 每帧内容第一次出现的下标，null表示不合并，已经合并过的序列不再合并
+     * @param diffs        每帧变化区域，null表示不变
+     */
+    private static FrameSnapshot apply(FrameSnapshot frames, FrameFormat format, int[] firstIndexes,
+                                       FrameDiffs diffs) {
+        FrameSnapshot result = frames;
+        if (format != null) {
+            result = result.withFormat(format);
+        }
+        if (diffs != null) {
+            result = result.withDiffs(diffs);
+        }
+        if (firstIndexes != null && FrameDuplicates.hasDuplicates(firstIndexes)
+                && !(result.getSource() instanceof DedupedFrameSource)) {
+            result = result.withSource(new DedupedFrameSource(result.getSource(), firstIndexes));
+        }
+        return result;
+    }
+
+    /**
+     * 逐帧解码分析没有保存结果的部分，全部分析完后保存并应用。
+     * 确定只能使用ARGB_8888且不需要检测重复帧和变化区域后不再检测剩余帧；
+     * 检测重复帧和变化区域时按原图尺寸解码，避免缩小后细微的差别被忽略
+     */
+    final class Inspection {
+        private final Context mContext;
+        /**
+         * 已应用保存结果的快照
+         */
+        private final FrameSnapshot mAnalyzed;
+        /**
+         * 合并前的来源，分析期间被替换为其他来源时放弃
+         */
+        private final FrameSource mSource;
+        private final String mKey;
+        private final FrameFormat.Inspector mFormatInspector;
+        private final FrameDuplicates.Inspector mDuplicatesInspector;
+        private final FrameDiffs.Inspector mDiffsInspector;
+        private final int mWidth;
+        private final int mHeight;
+        private final HashMap<String, Integer> mInspected = new HashMap<>();
+        private boolean mIsReducible;
+        private int mIndex;
+        /**
+         * 计算变化区域时保留的第一帧和上一帧，最后一帧与第一帧比较
+         */
+        private Bitmap mFirstBitmap;
+        private Bitmap mPreviousBitmap;
+        private String mPreviousKey;
+
+        private Inspection(Context context, FrameSnapshot analyzed, boolean selectFormat, boolean dedupe,
+                   boolean dirtyRegion) {
+            mContext = context;
+            mAnalyzed = analyzed;
+            mSource = unwrap(analyzed.getSource());
+            int frameCount = mSource.getFrameCount();
+            mKey = getSavedKey(context, mSource);
+            mFormatInspector = selectFormat && isConfigurable(mSource)
+                    && (mKey == null || FrameFormat.load(context, mKey) == null) ? new FrameFormat.Inspector() : null;
+            mDuplicatesInspector = dedupe && isDedupable(mSource)
+                    && (mKey == null || FrameDuplicates.load(context, mKey, frameCount) == null)
+                    ? new FrameDuplicates.Inspector(frameCount) : null;
+            mDiffsInspector = dirtyRegion && isDiffable(mSource) && analyzed.getDiffs() == null
+                    ? new FrameDiffs.Inspector(frameCount) : null;
+            mIsReducible = mFormatInspector != null;
+            boolean isOriginalSize = mDuplicatesInspector != null || mDiffsInspector != null;
+            mWidth = isOriginalSize ? 0 : mTargetWidth;
+            mHeight = isOriginalSize ? 0 : mTargetHeight;
+        }
+
+        /**
+         * 解码并分析下一帧，帧标识与之前相同的帧不需要解码，一起跳过
+         *
+         * @return 还有帧需要分析时返回true；分析完成、序列被替换或有帧解码失败时返回false
+         */
+        boolean next() {
+            boolean hasNext = false;
+            try {
+                hasNext = inspectNext();
+            } finally {
+                if (!hasNext) {
+                    releasePrevious();
+                    if (mFirstBitmap != null) {
+                        mBitmapPool.put(mFirstBitmap);
+                        mFirstBitmap = null;
+                    }
+                }
+            }
+            return hasNext;
+        }
+
+        private boolean inspectNext() {
+            int frameCount = mSource.getFrameCount();
+            if (frameCount == 0) {
+                return false;
+            }
+            while (mIndex < frameCount
+                    && (mIsReducible || mDuplicatesInspector != null || mDiffsInspector != null)) {
+                int index = mIndex++;
+                String frameKey = mSource.getFrameKey(index);
+                Integer sameIndex = frameKey == null ? null : mInspected.get(frameKey);
+                if (sameIndex != null && mDuplicatesInspector != null) {
+                    mDuplicatesInspector.inspectSameAs(index, sameIndex);
+                }
+                // 与之前不相邻的相同帧仍需要像素与上一帧比较
+                if (sameIndex != null && (mDiffsInspector == null || frameKey.equals(mPreviousKey))) {
+                    if (mDiffsInspector != null) {
+                        mDiffsInspector.inspectUnchanged(index);
+                    }
+                    continue;
+                }
+                if (unwrap(mFrames.get().getSource()) != mSource) {
+                    return false;
+                }
+                BitmapPool bitmapPool = mBitmapPool;
+                Bitmap bitmap = mSource.decode(index, mWidth, mHeight, Bitmap.Config.ARGB_8888, bitmapPool);
+                mPreviousKey = frameKey;
+                if (bitmap == null) {
+                    if (frameKey == null) {
+                        // 下一帧无法与这一帧比较
+                        releasePrevious();
+                        return true;
+                    }
+                    Log.w(TAG, "inspect: decode " + frameKey + " failed");
+                    return false;
+                }
+                if (sameIndex == null) {
+                    if (frameKey != null) {
+                        mInspected.put(frameKey, index);
+                    }
+                    if (mIsReducible) {
+                        mIsReducible = mFormatInspector.inspect(bitmap);
+                    }
+                    if (mDuplicatesInspector != null) {
+                        mDuplicatesInspector.inspect(index, bitmap);
+                    }
+                }
+                if (mDiffsInspector == null) {
+                    bitmapPool.put(bitmap);
+                    return true;
+                }
+                if (mPreviousBitmap != null) {
+                    mDiffsInspector.inspect(index, mPreviousBitmap, bitmap);
+                    releasePrevious();
+                } else if (index == 0) {
+                    mFirstBitmap = bitmap;
+                }
+                mPreviousBitmap = bitmap;
+                return true;
+            }
+            if (mDiffsInspector != null && mFirstBitmap != null && mPreviousBitmap != null) {
+                mDiffsInspector.inspect(0, mPreviousBitmap, mFirstBitmap);
+            }
+            finish();
+            return false;
+        }
+
+        /**
+         * 归还上一帧，第一帧在与最后一帧比较前一直保留
+         */
+        private void releasePrevious() {
+            if (mPreviousBitmap != null && mPreviousBitmap != mFirstBitmap) {
+                mBitmapPool.put(mPreviousBitmap);
+            }
+            mPreviousBitmap = null;
+        }
+
+        /**
+         * 保存检测结果，应用到当前序列，分析期间当前序列换用了其他分析结果时在其基础上应用
+         */
+        private void finish() {
+            FrameFormat format = null;
+            int[] firstIndexes = null;
+            FrameDiffs diffs = null;
+            if (mFormatInspector != null) {
+                format = mFormatInspector.getResult();
+                if (mKey != null) {
+                    FrameFormat.save(mContext, mKey, format);
+                }
+            }
+            if (mDuplicatesInspector != null) {
+                firstIndexes = mDuplicatesInspector.getResult();
+                if (mKey != null) {
+                    FrameDuplicates.save(mContext, mKey, firstIndexes);
+                }
+            }
+            if (mDiffsInspector != null) {
+                diffs = mDiffsInspector.getResult();
+                if (diffs != null && mKey != null) {
+                    FrameDiffs.save(mContext, mKey, diffs);
+                }
+            }
+            FrameSnapshot current = mAnalyzed;
+            while (!mFrames.compareAndSet(current, apply(current, format, firstIndexes, diffs))) {
+                current = mFrames.get();
+                if (unwrap(current.getSource()) != mSource) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.liang.anim;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 播放性能统计，记录每帧解码、锁定画布、绘制、提交的耗时和调度延迟，以直方图而不是逐帧回调的方式汇总，
+ * 每次记录只是数组计数，可以在正式版本中常开。通过{@link SequenceFrameView#getFrameMetrics()}取得快照，
+ * 或通过{@link SequenceFrameView#setOnFrameMetricsListener(OnFrameMetricsListener, long)}定期接收
+ */
+public final class FrameMetrics {
+    private final Histogram mDecode = new Histogram();
+    private final Histogram mLock = new Histogram();
+    private final Histogram mDraw = new Histogram();
+    private final Histogram mPost = new Histogram();
+    private final Histogram mLateness = new Histogram();
+    private long mFrameCount;
+    private long mJankCount;
+    private long mDrawFailureCount;
+    private long mCacheHitCount;
+    private long mCacheMissCount;
+    private long mPrefetchHitCount;
+    private long mLastReportNanos;
+
+    FrameMetrics() {
+    }
+
+    synchronized void recordDecode(long nanos, boolean cacheHit) {
+        if (cacheHit) {
+            mCacheHitCount++;
+        } else {
+            mCacheMissCount++;
+            mDecode.record(nanos);
+        }
+    }
+
+    synchronized void recordPrefetchHit() {
+        mPrefetchHitCount++;
+    }
+
+    synchronized void recordLateness(long nanos) {
+        mLateness.record(nanos);
+    }
+
+    /**
+     * 记录一帧的绘制耗时
+     *
+     * @param lockNanos   锁定画布耗时
+     * @param drawNanos   绘制耗时
+     * @param postNanos   提交画布耗时
+     * @param isJank      是否晚于下一帧的预定时间才提交
+     */
+    synchronized void recordFrame(long lockNanos, long drawNanos, long postNanos, boolean isJank) {
+        mFrameCount++;
+        mLock.record(lockNanos);
+        mDraw.record(drawNanos);
+        mPost.record(postNanos);
+        if (isJank) {
+            mJankCount++;
+        }
+    }
+
+    synchronized void recordDrawFailure() {
+        mDrawFailureCount++;
+    }
+
+    /**
+     * 距上次通知超过间隔时返回true并记录本次通知时间
+     */
+    synchronized boolean shouldReport(long nowNanos, long intervalNanos) {
+        if (nowNanos - mLastReportNanos < intervalNanos) {
+            return false;
+        }
+        mLastReportNanos = nowNanos;
+        return true;
+    }
+
+    synchronized void reset() {
+        mDecode.reset();
+        mLock.reset();
+        mDraw.reset();
+        mPost.reset();
+        mLateness.reset();
+        mFrameCount = 0;
+        mJankCount = 0;
+        mDrawFailureCount = 0;
+        mCacheHitCount = 0;
+        mCacheMissCount = 0;
+        mPrefetchHitCount = 0;
+    }
+
+    synchronized Snapshot snapshot(long droppedFrames, int cacheBytes, int poolBytes) {
+        return new Snapshot(this, droppedFrames, cacheBytes, poolBytes);
+    }
+
+    /**
+     * 某一时刻的统计数据，不再变化
+     */
+    public static final class Snapshot {
+        private final Histogram mDecode;
+        private final Histogram mLock;
+        private final Histogram mDraw;
+        private final Histogram mPost;
+        private final Histogram mLateness;
+        private final long mFrameCount;
+        private final long mJankCount;
+        private final long mDroppedFrames;
+        private final long mDrawFailureCount;
+        private final long mCacheHitCount;
+        private final long mCacheMissCount;
+        private final long mPrefetchHitCount;
+        private final int mCacheBytes;
+        private final int mPoolBytes;
+
+        private Snapshot(FrameMetrics metrics, long droppedFrames, int cacheBytes, int poolBytes) {
+            mDecode = metrics.mDecode.copy();
+            mLock = metrics.mLock.copy();
+            mDraw = metrics.mDraw.copy();
+            mPost = metrics.mPost.copy();
+            mLateness = metrics.mLateness.copy();
+            mFrameCount = metrics.mFrameCount;
+            mJankCount = metrics.mJankCount;
+            mDrawFailureCount = metrics.mDrawFailureCount;
+            mCacheHitCount = metrics.mCacheHitCount;
+            mCacheMissCount = metrics.mCacheMissCount;
+            mPrefetchHitCount = metrics.mPrefetchHitCount;
+            mDroppedFrames = droppedFrames;
+            mCacheBytes = cacheBytes;
+            mPoolBytes = poolBytes;
+        }
+
+        /**
+         * 实际解码的耗时，命中缓存的帧不计入
+         */
+        public Histogram getDecodeTime() {
+            return mDecode;
+        }
+
+        /**
+         * 锁定画布的耗时，Surface缓冲区都在使用中时会等待
+         */
+        public Histogram getLockTime() {
+            return mLock;
+        }
+
+        public Histogram getDrawTime() {
+            return mDraw;
+        }
+
+        /**
+         * 提交画布的耗时
+         */
+        public Histogram getPostTime() {
+            return mPost;
+        }
+
+        /**
+         * 绘制任务实际开始时间晚于预定时间的延迟
+         */
+        public Histogram getScheduleLateness() {
+            return mLateness;
+        }
+
+        /**
+         * 已绘制的帧数
+         */
+        public long getFrameCount() {
+            return mFrameCount;
+        }
+
+        /**
+         * 晚于下一帧的预定时间才提交的帧数
+         */
+        public long getJankCount() {
+            return mJankCount;
+        }
+
+        /**
+         * 因来不及绘制而跳过的帧数，只在{@link SequenceFrameView#CLOCK_MODE_VSYNC}模式下统计
+         */
+        public long getDroppedFrames() {
+            return mDroppedFrames;
+        }
+
+        public long getDrawFailureCount() {
+            return mDrawFailureCount;
+        }
+
+        public long getCacheHitCount() {
+            return mCacheHitCount;
+        }
+
+        public long getCacheMissCount() {
+            return mCacheMissCount;
+        }
+
+        /**
+         * 直接使用预解码结果的帧数
+         */
+        public long getPrefetchHitCount() {
+            return mPrefetchHitCount;
+        }
+
+        /**
+         * 缓存命中率，0-1
+         */
+        public float getCacheHitRate() {
+            long total = mCacheHitCount + mCacheMissCount;
+            return total == 0 ? 0 : mCacheHitCount / (float) total;
+        }
+
+        /**
+         * 帧缓存当前占用的字节数，共享缓存时包含其他控件的帧
+         */
+        public int getCacheBytes() {
+            return mCacheBytes;
+        }
+
+        /**
+         * 复用池当前占用的字节数
+         */
+        public int getPoolBytes() {
+            return mPoolBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "FrameMetrics[frames=%d, jank=%d, dropped=%d, failures=%d, "
+                            + "cacheHitRate=%.2f, prefetchHits=%d, cacheBytes=%d, poolBytes=%d, decode=%s, lock=%s, "
+                            + "draw=%s, post=%s, lateness=%s]", mFrameCount, mJankCount, mDroppedFrames,
+                    mDrawFailureCount, getCacheHitRate(), mPrefetchHitCount, mCacheBytes, mPoolBytes, mDecode, mLock,
+                    mDraw, mPost, mLateness);
+        }
+    }
+
+    /**
+     * 耗时直方图，第i个区间记录[2^(i-1), 2^i)微秒的样本，最后一个区间记录超过1秒左右的样本
+     */
+    public static final class Histogram {
+        private static final int BUCKET_COUNT = 22;
+        private final long[] mBuckets;
+        private long mCount;
+        private long mSumMicros;
+        private long mMaxMicros;
+
+        private Histogram() {
+            mBuckets = new long[BUCKET_COUNT];
+        }
+
+        private Histogram(Histogram other) {
+            mBuckets = Arrays.copyOf(other.mBuckets, BUCKET_COUNT);
+            mCount = other.mCount;
+            mSumMicros = other.mSumMicros;
+            mMaxMicros = other.mMaxMicros;
+        }
+
+        private void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            int bucket = micros == 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+            mBuckets[Math.min(bucket, BUCKET_COUNT - 1)]++;
+            mCount++;
+            mSumMicros += micros;
+            mMaxMicros = Math.max(mMaxMicros, micros);
+        }
+
+        private void reset() {
+            Arrays.fill(mBuckets, 0);
+            mCount = 0;
+            mSumMicros = 0;
+            mMaxMicros = 0;
+        }
+
+        private Histogram copy() {
+            return new Histogram(this);
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * 平均值，微秒
+         */
+        public long getMeanMicros() {
+            return mCount == 0 ? 0 : mSumMicros / mCount;
+        }
+
+        /**
+         * 最大值，微秒
+         */
+        public long getMaxMicros() {
+            return mMaxMicros;
+        }
+
+        /**
+         * 百分位数的估计值，返回所在区间的上限，微秒
+         *
+         * @param percent 0-100
+         */
+        public long getPercentileMicros(int percent) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(mCount * Math.min(100, Math.max(0, percent)) / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets[i];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(getBucketUpperBoundMicros(i), mMaxMicros);
+                }
+            }
+            return mMaxMicros;
+        }
+
+        public int getBucketCount() {
+            return BUCKET_COUNT;
+        }
+
+        /**
+         * 区间内的样本数
+         */
+        public long getBucketValue(int bucket) {
+            return mBuckets[bucket];
+        }
+
+        /**
+         * 区间上限（不含），微秒，最后一个区间没有上限
+         */
+        public long getBucketUpperBoundMicros(int bucket) {
+            return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "{n=%d, mean=%dus, p50=%dus, p90=%dus, p99=%dus, max=%dus}", mCount,
+                    getMeanMicros(), getPercentileMicros(50), getPercentileMicros(90), getPercentileMicros(99),
+                    mMaxMicros);
+        }
+    }
+
+    /**
+     * 定期接收统计快照
+     */
+    public interface OnFrameMetricsListener {
+        /**
+         * 在主线程回调
+         *
+         * @param snapshot 累计的统计数据
+         */
+        void onFrameMetrics(Snapshot snapshot);
+    }
+}
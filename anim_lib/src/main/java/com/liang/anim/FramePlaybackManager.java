@@ -0,0 +1,181 @@
+package com.liang.anim;
+
+import android.graphics.Rect;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+
+/**
+ * 列表中多个{@link SequenceFrameView}的播放管理，适合RecyclerView等可滚动容器：
+ * <ul>
+ * <li>所有注册的控件共用一个屏幕刷新节拍计时，不再各自注册回调或按延迟循环</li>
+ * <li>容器滚动或重新布局后检查每个控件的可见面积，不可见的控件暂停计时并停止解码，重新可见后从暂停的帧继续</li>
+ * <li>注册的控件使用同一个帧缓存和解码复用池，回收后重新绑定同一序列的列表项直接使用已解码的帧</li>
+ * </ul>
+ * 一般在onBindViewHolder中{@link #register(SequenceFrameView)}，在onViewRecycled中{@link #unregister(SequenceFrameView)}，
+ * 所有方法只在主线程调用
+ */
+public final class FramePlaybackManager {
+    private final FrameTicker mTicker = new FrameTicker();
+    private final ArrayList<SequenceFrameView> mViews = new ArrayList<>();
+    private final FrameCache mFrameCache;
+    private final BitmapPool mBitmapPool;
+    private final Rect mVisibleRect = new Rect();
+    private float mVisibleThreshold;
+    private View mContainer;
+    private final ViewTreeObserver.OnScrollChangedListener mOnScrollChangedListener =
+            new ViewTreeObserver.OnScrollChangedListener() {
+                @Override
+                public void onScrollChanged() {
+                    updateVisibility();
+                }
+            };
+    private final ViewTreeObserver.OnGlobalLayoutListener mOnGlobalLayoutListener =
+            new ViewTreeObserver.OnGlobalLayoutListener() {
+                @Override
+                public void onGlobalLayout() {
+                    updateVisibility();
+                }
+            };
+
+    /**
+     * 使用进程内共享的{@link FrameCache#getInstance()}和{@link BitmapPool#getInstance()}
+     */
+    public FramePlaybackManager() {
+        this(FrameCache.getInstance(), BitmapPool.getInstance());
+    }
+
+    /**
+     * 自行创建的缓存和复用池会纳入{@link MemoryGovernor}管理，内存不足时一起缩小
+     *
+     * @param frameCache 注册的控件共用的帧缓存
+     * @param bitmapPool 注册的控件共用的解码复用池
+     */
+    public FramePlaybackManager(FrameCache frameCache, BitmapPool bitmapPool) {
+        mFrameCache = frameCache;
+        mBitmapPool = bitmapPool;
+        MemoryGovernor governor = MemoryGovernor.getInstance();
+        governor.track(frameCache);
+        governor.track(bitmapPool);
+    }
+
+    /**
+     * 关联滚动容器，容器滚动或重新布局后更新控件的可见状态
+     *
+     * @param container 滚动容器，如RecyclerView
+     */
+    public void attach(View container) {
+        detach();
+        mContainer = container;
+        ViewTreeObserver observer = container.getViewTreeObserver();
+        observer.addOnScrollChangedListener(mOnScrollChangedListener);
+        observer.addOnGlobalLayoutListener(mOnGlobalLayoutListener);
+        updateVisibility();
+    }
+
+    /**
+     * 取消关联滚动容器，已注册的控件保持当前状态
+     */
+    @SuppressWarnings("deprecation")
+    public void detach() {
+        if (mContainer == null) {
+            return;
+        }
+        ViewTreeObserver observer = mContainer.getViewTreeObserver();
+        if (observer.isAlive()) {
+            observer.removeOnScrollChangedListener(mOnScrollChangedListener);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                observer.removeOnGlobalLayoutListener(mOnGlobalLayoutListener);
+            } else {
+                observer.removeGlobalOnLayoutListener(mOnGlobalLayoutListener);
+            }
+        }
+        mContainer = null;
+    }
+
+    /**
+     * 注册控件，重复注册无效
+     *
+     * @param view 控件
+     */
+    public void register(SequenceFrameView view) {
+        if (mViews.contains(view)) {
+            return;
+        }
+        mViews.add(view);
+        view.setFrameCache(mFrameCache);
+        view.setBitmapPool(mBitmapPool);
+        view.setFrameTicker(mTicker);
+        view.setSuspended(!isVisible(view));
+    }
+
+    /**
+     * 取消注册，控件恢复单独计时，暂停的控件恢复播放
+     *
+     * @param view 控件
+     */
+    public void unregister(SequenceFrameView view) {
+        if (!mViews.remove(view)) {
+            return;
+        }
+        view.setFrameTicker(null);
+        view.setSuspended(false);
+    }
+
+    /**
+     * 取消关联容器并取消注册所有控件
+     */
+    public void release() {
+        detach();
+        for (int i = mViews.size() - 1; i >= 0; i--) {
+            unregister(mViews.get(i));
+        }
+    }
+
+    /**
+     * 设置继续播放需要的最小可见比例，可见面积低于该比例的控件暂停
+     *
+     * @param visibleThreshold 0.0 - 1.0，默认0，即只暂停完全不可见的控件
+     */
+    public void setVisibleThreshold(float visibleThreshold) {
+        mVisibleThreshold = Math.max(0, Math.min(1, visibleThreshold));
+        updateVisibility();
+    }
+
+    public float getVisibleThreshold() {
+        return mVisibleThreshold;
+    }
+
+    public FrameCache getFrameCache() {
+        return mFrameCache;
+    }
+
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * 检查所有注册控件的可见面积，暂停不可见的控件，恢复重新可见的控件。
+     * 容器以外的原因改变可见状态时（如弹出覆盖层）可手动调用
+     */
+    public void updateVisibility() {
+        for (int i = 0; i < mViews.size(); i++) {
+            SequenceFrameView view = mViews.get(i);
+            view.setSuspended(!isVisible(view));
+        }
+    }
+
+    private boolean isVisible(View view) {
+        if (!view.isShown() || !view.getGlobalVisibleRect(mVisibleRect)) {
+            return false;
+        }
+        long area = (long) view.getWidth() * view.getHeight();
+        if (area == 0) {
+            return false;
+        }
+        long visibleArea = (long) mVisibleRect.width() * mVisibleRect.height();
+        return visibleArea > 0 && visibleArea >= mVisibleThreshold * area;
+    }
+}
@@ -0,0 +1,252 @@
+package com.liang.anim;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * 序列帧预解码，在共享线程池的独立队列中提前解码即将绘制的N+1..N+k帧，
+ * 结果保存在固定大小的环形缓冲区中，绘制线程只负责取帧绘制
+ */
+final class FramePrefetcher implements Runnable {
+    private static final String TAG = "FramePrefetcher";
+    private static final int NO_INDEX = -1;
+
+    private final Decoder mDecoder;
+    private int[] mIndexes = new int[0];
+    private Bitmap[] mFrames = new Bitmap[0];
+    private int[] mWanted = new int[0];
+    private int mWantedCount;
+    private int mGeneration;
+    private boolean mScheduled;
+    private FrameScheduler.Lane mLane;
+
+    FramePrefetcher(Decoder decoder, int depth) {
+        mDecoder = decoder;
+        setDepth(depth);
+    }
+
+    /**
+     * 设置预解码深度，0表示关闭预解码
+     */
+    synchronized void setDepth(int depth) {
+        depth = Math.max(0, depth);
+        if (depth == mIndexes.length) {
+            return;
+        }
+        clear();
+        mIndexes = new int[depth];
+        mFrames = new Bitmap[depth];
+        mWanted = new int[depth];
+        for (int i = 0; i < depth; i++) {
+            mIndexes[i] = NO_INDEX;
+        }
+    }
+
+    synchronized int getDepth() {
+        return mIndexes.length;
+    }
+
+    /**
+     * 取出已经解码好的帧，所有权转交给调用者
+     *
+     * @return 该帧未预解码时返回null
+     */
+    synchronized Bitmap take(int index) {
+        for (int i = 0; i < mIndexes.length; i++) {
+            if (mIndexes[i] == index && mFrames[i] != null) {
+                Bitmap bitmap = mFrames[i];
+                mFrames[i] = null;
+                mIndexes[i] = NO_INDEX;
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 以当前帧为起点，按播放方向预解码后续帧
+     *
+     * @param current    当前帧下标
+     * @param direction  播放方向，1为正向，-1为反向
+     * @param frameCount 总帧数
+     * @param loop       是否循环，循环时越过首尾帧后回绕
+     */
+    synchronized void prefetch(int current, int direction, int frameCount, boolean loop) {
+        // 内存紧张时减少预解码帧数
+        int depth = Math.min(mIndexes.length, MemoryGovernor.getInstance().getPrefetchLimit());
+        if (depth == 0 || frameCount <= 0) {
+            return;
+        }
+        int step = direction < 0 ? -1 : 1;
+        mWantedCount = 0;
+        for (int offset = 1; offset <= depth && offset < frameCount; offset++) {
+            int index = current + step * offset;
+            if (loop) {
+                index = ((index % frameCount) + frameCount) % frameCount;
+            } else if (index < 0 || index >= frameCount) {
+                break;
+            }
+            mWanted[mWantedCount++] = index;
+        }
+        schedule();
+    }
+
+    /**
+     * 以当前帧为中心，由近到远交替预解码前后两侧的帧，用于拖动进度时来回切换
+     *
+     * @param current    当前帧下标
+     * @param frameCount 总帧数
+     * @param loop       是否循环，循环时越过首尾帧后回绕
+     */
+    synchronized void prefetchAround(int current, int frameCount, boolean loop) {
+        // 内存紧张时减少预解码帧数
+        int depth = Math.min(mIndexes.length, MemoryGovernor.getInstance().getPrefetchLimit());
+        if (depth == 0 || frameCount <= 0) {
+            return;
+        }
+        mWantedCount = 0;
+        for (int offset = 1; mWantedCount < depth && offset < frameCount; offset++) {
+            int before = mWantedCount;
+            addWanted(current + offset, frameCount, loop);
+            if (mWantedCount < depth) {
+                addWanted(current - offset, frameCount, loop);
+            }
+            if (mWantedCount == before && !loop) {
+                break;
+            }
+        }
+        schedule();
+    }
+
+    private void addWanted(int index, int frameCount, boolean loop) {
+        if (loop) {
+            index = ((index % frameCount) + frameCount) % frameCount;
+        } else if (index < 0 || index >= frameCount) {
+            return;
+        }
+        if (!isWanted(index)) {
+            mWanted[mWantedCount++] = index;
+        }
+    }
+
+    /**
+     * 释放不再需要的帧，有未解码的帧时提交解码任务
+     */
+    private void schedule() {
+        int depth = mIndexes.length;
+        for (int i = 0; i < depth; i++) {
+            if (mIndexes[i] != NO_INDEX && !isWanted(mIndexes[i])) {
+                release(i);
+            }
+        }
+        if (!mScheduled && findMissing() != NO_INDEX) {
+            if (mLane == null) {
+                mLane = FrameScheduler.getInstance().newLane();
+            }
+            mScheduled = mLane.post(this);
+        }
+    }
+
+    /**
+     * 丢弃已预解码的帧，帧资源变化后调用
+     */
+    synchronized void clear() {
+        mGeneration++;
+        mWantedCount = 0;
+        for (int i = 0; i < mIndexes.length; i++) {
+            release(i);
+        }
+    }
+
+    /**
+     * 清空缓冲并结束解码线程
+     */
+    synchronized void quit() {
+        clear();
+        if (mLane != null) {
+            mLane.quit();
+            mLane = null;
+        }
+        mScheduled = false;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            int index;
+            int generation;
+            synchronized (this) {
+                index = findMissing();
+                int slot = indexOfSlot(NO_INDEX);
+                if (index == NO_INDEX || slot == NO_INDEX) {
+                    mScheduled = false;
+                    return;
+                }
+                generation = mGeneration;
+                mIndexes[slot] = index;
+            }
+            Bitmap bitmap = mDecoder.decode(index);
+            synchronized (this) {
+                int slot = indexOfSlot(index);
+                if (generation != mGeneration || slot == NO_INDEX || !isWanted(index)) {
+                    if (slot != NO_INDEX && mFrames[slot] == null) {
+                        mIndexes[slot] = NO_INDEX;
+                    }
+                    mDecoder.recycle(bitmap);
+                    continue;
+                }
+                if (bitmap == null) {
+                    Log.w(TAG, "run: decode frame " + index + " failed");
+                    mIndexes[slot] = NO_INDEX;
+                    mScheduled = false;
+                    return;
+                }
+                mFrames[slot] = bitmap;
+            }
+        }
+    }
+
+    private boolean isWanted(int index) {
+        for (int i = 0; i < mWantedCount; i++) {
+            if (mWanted[i] == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int findMissing() {
+        for (int i = 0; i < mWantedCount; i++) {
+            if (indexOfSlot(mWanted[i]) == NO_INDEX) {
+                return mWanted[i];
+            }
+        }
+        return NO_INDEX;
+    }
+
+    private int indexOfSlot(int index) {
+        for (int i = 0; i < mIndexes.length; i++) {
+            if (mIndexes[i] == index) {
+                return i;
+            }
+        }
+        return NO_INDEX;
+    }
+
+    private void release(int slot) {
+        if (mFrames[slot] != null) {
+            mDecoder.recycle(mFrames[slot]);
+            mFrames[slot] = null;
+        }
+        mIndexes[slot] = NO_INDEX;
+    }
+
+    /**
+     * 帧解码器，由预解码线程调用
+     */
+    interface Decoder {
+        Bitmap decode(int index);
+
+        void recycle(Bitmap bitmap);
+    }
+}
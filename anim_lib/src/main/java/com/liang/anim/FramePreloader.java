@@ -0,0 +1,349 @@
+package com.liang.anim;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 序列帧预加载，在控件显示前（如启动页期间）于后台打开序列并解码前面的帧放入{@link FrameCache}，
+ * 之后{@link SequenceFrameView}或{@link SequenceFrameDrawable}绑定同一序列时不再列出文件夹，
+ * 第一帧在主线程直接从缓存绘制。
+ * 解码尺寸和像素格式需要与控件一致才能命中缓存：尺寸为控件大小，控件关闭缩小解码时为0；
+ * 控件开启自动选择像素格式或合并重复帧时，预加载也需要开启
+ */
+public final class FramePreloader {
+    private static final String TAG = "FramePreloader";
+    /**
+     * 预加载完成、尚未被绑定的序列，键为Assets资源文件夹路径或自定义的来源
+     */
+    private static final HashMap<Object, FrameSnapshot> sPreloaded = new HashMap<>();
+
+    private final Context mContext;
+    private volatile int mTargetWidth;
+    private volatile int mTargetHeight;
+    private volatile boolean mIsAutoConfig;
+    private volatile boolean mIsDedupe;
+    private volatile int mMaxFrames = Integer.MAX_VALUE;
+    private volatile BitmapPool mBitmapPool = BitmapPool.getInstance();
+    private volatile FrameCache mFrameCache = FrameCache.getInstance();
+    private volatile DiskFrameCache mDiskCache;
+
+    public FramePreloader(Context context) {
+        mContext = context.getApplicationContext();
+        MemoryGovernor.getInstance().install(context);
+    }
+
+    /**
+     * 按默认设置预加载Assets资源文件夹中的序列
+     *
+     * @param width  控件宽，控件关闭缩小解码时为0
+     * @param height 控件高，控件关闭缩小解码时为0
+     * @return 结果为放入缓存的帧数，取消后停止解码
+     */
+    public static Future<Integer> preload(Context context, String assetsFolderPath, int width, int height) {
+        FramePreloader preloader = new FramePreloader(context);
+        preloader.setTargetSize(width, height);
+        return preloader.preload(assetsFolderPath);
+    }
+
+    /**
+     * 按默认设置预加载自定义的序列帧来源，之后通过setFrameSource绑定同一个来源对象
+     *
+     * @param width  控件宽，控件关闭缩小解码时为0
+     * @param height 控件高，控件关闭缩小解码时为0
+     * @return 结果为放入缓存的帧数，取消后停止解码
+     */
+    public static Future<Integer> preload(Context context, FrameSource source, int width, int height) {
+        FramePreloader preloader = new FramePreloader(context);
+        preloader.setTargetSize(width, height);
+        return preloader.preload(source);
+    }
+
+    /**
+     * 关闭所有预加载完成但没有被绑定的序列，缓存中的帧不受影响
+     */
+    public static void clearPreloaded() {
+        synchronized (sPreloaded) {
+            for (Map.Entry<Object, FrameSnapshot> entry : sPreloaded.entrySet()) {
+                closeOwned(entry.getKey(), entry.getValue());
+            }
+            sPreloaded.clear();
+        }
+    }
+
+    /**
+     * 取出预加载完成的Assets序列，每次预加载只能被绑定一次
+     *
+     * @return 没有预加载或尚未完成时返回null
+     */
+    static FrameSnapshot take(String assetsFolderPath) {
+        synchronized (sPreloaded) {
+            return sPreloaded.remove(assetsFolderPath);
+        }
+    }
+
+    /**
+     * 取出预加载完成的自定义来源
+     *
+     * @return 没有预加载或尚未完成时返回null
+     */
+    static FrameSnapshot take(FrameSource source) {
+        synchronized (sPreloaded) {
+            return sPreloaded.remove(source);
+        }
+    }
+
+    /**
+     * 设置解码尺寸，需要与控件的绘制区域一致
+     *
+     * @param width  控件宽，0表示按原图尺寸
+     * @param height 控件高，0表示按原图尺寸
+     */
+    public void setTargetSize(int width, int height) {
+        mTargetWidth = width;
+        mTargetHeight = height;
+    }
+
+    /**
+     * 设置是否按保存的检测结果选择像素格式，没有检测过时先在预加载线程中检测，
+     * 详见{@link SequenceFrameView#setAutoConfig(boolean)}
+     */
+    public void setAutoConfig(boolean autoConfig) {
+        mIsAutoConfig = autoConfig;
+    }
+
+    /**
+     * 设置是否合并重复帧，详见{@link SequenceFrameView#setDedupe(boolean)}
+     */
+    public void setDedupe(boolean dedupe) {
+        mIsDedupe = dedupe;
+    }
+
+    /**
+     * 设置最多预加载的帧数，默认解码到缓存放满为止
+     */
+    public void setMaxFrames(int maxFrames) {
+        mMaxFrames = Math.max(1, maxFrames);
+    }
+
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
+
+    /**
+     * 设置放入的帧缓存，需要与控件使用的缓存相同，默认使用进程内共享的{@link FrameCache#getInstance()}
+     */
+    public void setFrameCache(FrameCache frameCache) {
+        mFrameCache = frameCache;
+    }
+
+    /**
+     * 设置磁盘缓存，详见{@link SequenceFrameView#setDiskCache(DiskFrameCache)}
+     */
+    public void setDiskCache(DiskFrameCache diskCache) {
+        mDiskCache = diskCache;
+    }
+
+    /**
+     * 预加载Assets资源文件夹中的序列，来源的选择与{@link SequenceFrameView#setAnimAssets(String)}相同
+     *
+     * @return 结果为放入缓存的帧数，取消后停止解码，打开失败时抛出IOException
+     */
+    public Future<Integer> preload(String assetsFolderPath) {
+        return submit(new PreloadTask(assetsFolderPath, null));
+    }
+
+    /**
+     * 预加载自定义的序列帧来源，来源由调用者关闭
+     *
+     * @return 结果为放入缓存的帧数，取消后停止解码
+     */
+    public Future<Integer> preload(FrameSource source) {
+        return submit(new PreloadTask(null, source));
+    }
+
+    /**
+     * 在后台低优先级线程中执行，每个任务只打开序列、分析或解码一帧，不占用播放的绘制线程
+     */
+    private Future<Integer> submit(PreloadTask task) {
+        task.mLane.post(task);
+        return task.mFuture;
+    }
+
+    private static void register(Object key, FrameSnapshot frames) {
+        FrameSnapshot previous;
+        synchronized (sPreloaded) {
+            previous = sPreloaded.put(key, frames);
+        }
+        if (previous != null) {
+            closeOwned(key, previous);
+        }
+    }
+
+    /**
+     * 按Assets资源文件夹打开的来源由预加载持有，没有被绑定时需要关闭
+     */
+    private static void closeOwned(Object key, FrameSnapshot frames) {
+        FrameSource source = FrameLoader.unwrap(frames.getSource());
+        if (key instanceof String && source instanceof Closeable) {
+            try {
+                ((Closeable) source).close();
+            } catch (IOException e) {
+                Log.w(TAG, "closeOwned: failed", e);
+            }
+        }
+    }
+
+    /**
+     * 预加载的结果，取消时只停止后续解码，不中断正在执行的线程：
+     * 中断会使正在读取的FileChannel被关闭，压缩包等来源之后无法再读取
+     */
+    private static final class PreloadFuture extends FutureTask<Integer> {
+        private static final Runnable NONE = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        PreloadFuture() {
+            super(NONE, null);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return super.cancel(false);
+        }
+
+        void complete(int loaded) {
+            set(loaded);
+        }
+
+        void fail(Throwable throwable) {
+            setException(throwable);
+        }
+    }
+
+    private final class PreloadTask implements Runnable {
+        private final String mAssetsFolderPath;
+        private final FrameSource mSource;
+        private final FrameLoader mLoader = new FrameLoader(new FrameMetrics());
+        private final boolean mIsAutoConfig;
+        private final boolean mIsDedupe;
+        private final int mMaxFrames;
+        private final PreloadFuture mFuture = new PreloadFuture();
+        private final FrameScheduler.Lane mLane = FrameScheduler.getInstance().newBackgroundLane();
+        /**
+         * 以下字段只在预加载队列中访问
+         */
+        private FrameSource mOpenedSource;
+        private FrameLoader.Inspection mInspection;
+        private FrameSnapshot mFrames;
+        private int mIndex;
+        private int mLoaded;
+        private boolean mIsRegistered;
+
+        PreloadTask(String assetsFolderPath, FrameSource source) {
+            mAssetsFolderPath = assetsFolderPath;
+            mSource = source;
+            mLoader.setBitmapPool(FramePreloader.this.mBitmapPool);
+            mLoader.setFrameCache(FramePreloader.this.mFrameCache);
+            mLoader.setDiskCache(FramePreloader.this.mDiskCache);
+            mLoader.setTargetSize(mTargetWidth, mTargetHeight);
+            mIsAutoConfig = FramePreloader.this.mIsAutoConfig;
+            mIsDedupe = FramePreloader.this.mIsDedupe;
+            mMaxFrames = FramePreloader.this.mMaxFrames;
+        }
+
+        @Override
+        public void run() {
+            boolean hasNext = false;
+            try {
+                hasNext = !mFuture.isCancelled() && next();
+            } catch (IOException e) {
+                mFuture.fail(e);
+            } catch (RuntimeException e) {
+                mFuture.fail(e);
+            } finally {
+                if (hasNext) {
+                    // 让出线程给其他序列的分析和预加载
+                    mLane.post(this);
+                } else {
+                    mLane.quit();
+                    closeUnregistered();
+                }
+            }
+        }
+
+        /**
+         * 执行下一步：打开序列、分析一帧或解码一帧
+         *
+         * @return 还有下一步时返回true
+         */
+        private boolean next() throws IOException {
+            if (mOpenedSource == null) {
+                mOpenedSource = mSource != null ? mSource
+                        : FrameLoader.openAssets(mContext.getAssets(), mAssetsFolderPath);
+                FrameSnapshot frames = mLoader.setSource(mOpenedSource);
+                if (mIsAutoConfig || mIsDedupe) {
+                    mInspection = mLoader.prepareInspection(mContext, frames, mIsAutoConfig, mIsDedupe, false);
+                }
+                return true;
+            }
+            if (mInspection != null) {
+                if (mInspection.next()) {
+                    return true;
+                }
+                mInspection = null;
+            }
+            if (mFrames == null) {
+                mFrames = mLoader.getFrames();
+            }
+            if (mIndex < Math.min(mFrames.getFrameCount(), mMaxFrames) && decodeNext()) {
+                return true;
+            }
+            register(mSource != null ? mSource : mAssetsFolderPath, mFrames);
+            mIsRegistered = true;
+            Log.d(TAG, "preload: " + mOpenedSource.getName() + ", " + mLoaded + "/" + mFrames.getFrameCount()
+                    + " frames");
+            mFuture.complete(mLoaded);
+            return false;
+        }
+
+        /**
+         * 解码一帧放入缓存
+         *
+         * @return 缓存已满、继续解码会淘汰前面已预加载的帧时返回false
+         */
+        private boolean decodeNext() {
+            Bitmap bitmap = mLoader.decode(mIndex++);
+            if (bitmap == null) {
+                return true;
+            }
+            FrameCache frameCache = mLoader.getFrameCache();
+            int size = BitmapPool.getBitmapByteSize(bitmap);
+            mLoader.release(bitmap);
+            mLoaded++;
+            return frameCache.getSize() + size <= frameCache.getMaxSize();
+        }
+
+        /**
+         * 取消、失败时关闭按Assets资源文件夹打开的来源
+         */
+        private void closeUnregistered() {
+            if (!mIsRegistered && mSource == null && mOpenedSource instanceof Closeable) {
+                try {
+                    ((Closeable) mOpenedSource).close();
+                } catch (IOException e) {
+                    Log.w(TAG, "closeUnregistered: failed", e);
+                }
+            }
+        }
+    }
+}
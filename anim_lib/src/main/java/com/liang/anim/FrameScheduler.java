@@ -0,0 +1,235 @@
+package com.liang.anim;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 所有序列帧控件共用的绘制/解码线程池，线程数不超过CPU核数，按需创建，空闲后自动退出。
+ * 每个控件通过{@link Lane}提交任务，同一个Lane内的任务按提交顺序串行执行。
+ * 绘制线程上的任务应尽量短，加载时的逐帧分析、预加载等耗时的工作通过{@link #newBackgroundLane()}
+ * 在单独的低优先级线程中执行，每个任务只处理一帧
+ */
+final class FrameScheduler {
+    private static final String TAG = "FrameScheduler";
+    private static final int MAX_POOL_SIZE = 4;
+    private static final long KEEP_ALIVE_SECONDS = 3;
+    private static final FrameScheduler sInstance = new FrameScheduler(
+            Math.max(2, Math.min(MAX_POOL_SIZE, Runtime.getRuntime().availableProcessors())));
+
+    private final ThreadPoolExecutor mExecutor;
+    /**
+     * 后台工作线程，只有一个，按提交顺序轮流执行各个队列的任务
+     */
+    private final ThreadPoolExecutor mBackgroundExecutor;
+    /**
+     * 延迟任务的计时线程，只负责到期后提交到队列，不受主线程卡顿影响
+     */
+    private final ScheduledThreadPoolExecutor mTimer;
+
+    FrameScheduler(int poolSize) {
+        mExecutor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "SequenceFrame-" + mCount.incrementAndGet());
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+        mBackgroundExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "SequenceFrame-background");
+            }
+        });
+        mBackgroundExecutor.allowCoreThreadTimeOut(true);
+        mTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SequenceFrame-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // 还有未到期的任务时计时线程不会退出
+        mTimer.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        mTimer.allowCoreThreadTimeOut(true);
+    }
+
+    static FrameScheduler getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * 创建一个串行任务队列，不会立即创建线程
+     */
+    Lane newLane() {
+        return new Lane(mExecutor);
+    }
+
+    /**
+     * 创建一个在后台低优先级线程中执行的串行任务队列，用于不影响播放的耗时工作，
+     * 任务应只处理一小部分后重新提交自己，让其他队列的任务轮流执行
+     */
+    Lane newBackgroundLane() {
+        return new Lane(mBackgroundExecutor);
+    }
+
+    /**
+     * 当前存活的线程数
+     */
+    int getThreadCount() {
+        return mExecutor.getPoolSize();
+    }
+
+    /**
+     * 串行任务队列，用法与Handler相同，任务在共享线程池中逐个执行，每执行一个任务后让出线程
+     */
+    final class Lane implements Runnable {
+        private final ThreadPoolExecutor mLaneExecutor;
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        private final ArrayList<DelayedTask> mDelayedTasks = new ArrayList<>();
+        private boolean mIsActive;
+        private boolean mIsQuit;
+
+        Lane(ThreadPoolExecutor executor) {
+            mLaneExecutor = executor;
+        }
+
+        /**
+         * @return 队列已退出时返回false
+         */
+        synchronized boolean post(Runnable runnable) {
+            if (mIsQuit) {
+                return false;
+            }
+            mTasks.add(runnable);
+            if (!mIsActive) {
+                mIsActive = true;
+                mLaneExecutor.execute(this);
+            }
+            return true;
+        }
+
+        synchronized boolean postDelayed(Runnable runnable, long delay) {
+            if (mIsQuit) {
+                return false;
+            }
+            if (delay <= 0) {
+                return post(runnable);
+            }
+            DelayedTask task = new DelayedTask(runnable);
+            mDelayedTasks.add(task);
+            task.mFuture = mTimer.schedule(task, delay, TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        synchronized void removeCallbacks(Runnable runnable) {
+            Iterator<Runnable> iterator = mTasks.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() == runnable) {
+                    iterator.remove();
+                }
+            }
+            Iterator<DelayedTask> delayedIterator = mDelayedTasks.iterator();
+            while (delayedIterator.hasNext()) {
+                DelayedTask task = delayedIterator.next();
+                if (task.mRunnable == runnable) {
+                    delayedIterator.remove();
+                    task.cancel();
+                }
+            }
+        }
+
+        /**
+         * 清空未执行的任务，之后提交的任务会被忽略，正在执行的任务不受影响
+         */
+        synchronized void quit() {
+            mIsQuit = true;
+            mTasks.clear();
+            for (DelayedTask task : mDelayedTasks) {
+                task.cancel();
+            }
+            mDelayedTasks.clear();
+        }
+
+        synchronized boolean isQuit() {
+            return mIsQuit;
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            synchronized (this) {
+                task = mTasks.poll();
+                if (task == null) {
+                    mIsActive = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "run: task failed", e);
+            } finally {
+                synchronized (this) {
+                    if (mTasks.isEmpty()) {
+                        mIsActive = false;
+                    } else {
+                        mLaneExecutor.execute(this);
+                    }
+                }
+            }
+        }
+
+        private final class DelayedTask implements Runnable {
+            private final Runnable mRunnable;
+            /**
+             * 只在持有Lane锁时访问
+             */
+            private ScheduledFuture<?> mFuture;
+
+            DelayedTask(Runnable runnable) {
+                mRunnable = runnable;
+            }
+
+            /**
+             * 取消计时，已到期的任务在{@link #run()}中发现已被移除后不再提交
+             */
+            void cancel() {
+                if (mFuture != null) {
+                    mFuture.cancel(false);
+                }
+            }
+
+            @Override
+            public void run() {
+                synchronized (Lane.this) {
+                    if (!mDelayedTasks.remove(this)) {
+                        return;
+                    }
+                }
+                post(mRunnable);
+            }
+        }
+    }
+}
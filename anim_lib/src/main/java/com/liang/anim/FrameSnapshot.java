@@ -0,0 +1,81 @@
+package com.liang.anim;
+
+/**
+ * 当前播放序列的不可变快照，替换序列、像素格式或变化区域时整体替换，绘制线程、预解码线程和主线程读取时都不需要加锁
+ */
+final class FrameSnapshot {
+    static final FrameSnapshot EMPTY = new FrameSnapshot(null, null, FrameFormat.DEFAULT, null);
+
+    private final FrameSource mSource;
+    private final FrameAtlas mAtlas;
+    private final FrameFormat mFormat;
+    private final FrameDiffs mDiffs;
+
+    private FrameSnapshot(FrameSource source, FrameAtlas atlas, FrameFormat format, FrameDiffs diffs) {
+        mSource = source;
+        mAtlas = atlas;
+        mFormat = format;
+        mDiffs = diffs;
+    }
+
+    /**
+     * 新序列的快照，合图序列同时取出合图索引，像素格式检测完成前按ARGB_8888解码
+     */
+    static FrameSnapshot of(FrameSource source) {
+        FrameAtlas atlas = source instanceof AtlasFrameSource ? ((AtlasFrameSource) source).getAtlas() : null;
+        return new FrameSnapshot(source, atlas, FrameFormat.DEFAULT, null);
+    }
+
+    /**
+     * 同一序列换用合并重复帧后的来源，合并后帧下标与合图不再对应，合图序列不合并
+     */
+    FrameSnapshot withSource(FrameSource source) {
+        return new FrameSnapshot(source, mAtlas, mFormat, mDiffs);
+    }
+
+    /**
+     * 同一序列换用检测出的像素格式
+     */
+    FrameSnapshot withFormat(FrameFormat format) {
+        return new FrameSnapshot(mSource, mAtlas, format, mDiffs);
+    }
+
+    /**
+     * 同一序列加上分析出的每帧变化区域
+     */
+    FrameSnapshot withDiffs(FrameDiffs diffs) {
+        return new FrameSnapshot(mSource, mAtlas, mFormat, diffs);
+    }
+
+    FrameSource getSource() {
+        return mSource;
+    }
+
+    FrameAtlas getAtlas() {
+        return mAtlas;
+    }
+
+    FrameFormat getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * 合并重复帧前每帧相对上一帧的变化区域
+     *
+     * @return 尚未分析完成或没有开启时返回null
+     */
+    FrameDiffs getDiffs() {
+        return mDiffs;
+    }
+
+    int getFrameCount() {
+        return mSource == null ? 0 : mSource.getFrameCount();
+    }
+
+    /**
+     * 裁剪后完全透明的帧没有图片，只绘制背景
+     */
+    boolean isEmptyFrame(int index) {
+        return mAtlas != null && mAtlas.isEmptyFrame(index);
+    }
+}
@@ -0,0 +1,52 @@
+package com.liang.anim;
+
+import android.graphics.Bitmap;
+
+/**
+ * 序列帧来源，控件通过该接口取得帧数、每帧时长和帧图片，缓存、预解码、按尺寸解码对所有来源通用。
+ * 绘制线程和预解码线程可能同时调用{@link #decode}，实现需要线程安全
+ *
+ * @see AssetsFrameSource
+ * @see ResourceFrameSource
+ * @see FileFrameSource
+ * @see MemoryFrameSource
+ */
+public interface FrameSource {
+    /**
+     * 来源标识，同一内容的来源应返回相同的值，用于保存像素格式检测结果等，
+     * 内容可能被替换的来源（如下载的文件）需要包含修改时间等内容标识
+     *
+     * @return null表示没有固定标识
+     */
+    String getName();
+
+    int getFrameCount();
+
+    /**
+     * 帧的显示时长
+     *
+     * @param index 帧下标
+     * @return 毫秒，小于等于0表示使用控件设置的时长
+     */
+    int getFrameDuration(int index);
+
+    /**
+     * 帧在共享缓存中的标识，内容相同的帧可以返回相同的值
+     *
+     * @param index 帧下标
+     * @return null表示不缓存
+     */
+    String getFrameKey(int index);
+
+    /**
+     * 解码一帧，优先使用复用池中的Bitmap
+     *
+     * @param index      帧下标
+     * @param width      绘制区域宽，0表示按原图尺寸
+     * @param height     绘制区域高，0表示按原图尺寸
+     * @param config     期望的像素格式，来源不支持时可以忽略
+     * @param bitmapPool 复用池，解码用的临时Bitmap也应归还到这里
+     * @return 解码失败时返回null
+     */
+    Bitmap decode(int index, int width, int height, Bitmap.Config config, BitmapPool bitmapPool);
+}
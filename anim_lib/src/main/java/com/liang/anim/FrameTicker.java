@@ -0,0 +1,80 @@
+package com.liang.anim;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * 多个播放时钟共用的主线程节拍，每个屏幕刷新周期只注册一次回调，依次驱动所有正在计时的{@link FrameClock}，
+ * 停止计时的时钟在下一次节拍时移除。只在主线程访问
+ */
+final class FrameTicker implements Runnable {
+    private static final long FALLBACK_INTERVAL = 16;
+
+    private final ArrayList<FrameClock> mClocks = new ArrayList<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private VsyncCallback mVsyncCallback;
+    private boolean mIsScheduled;
+
+    void add(FrameClock clock) {
+        if (!mClocks.contains(clock)) {
+            mClocks.add(clock);
+        }
+        schedule();
+    }
+
+    @Override
+    public void run() {
+        tick(System.nanoTime());
+    }
+
+    private void tick(long frameTimeNanos) {
+        mIsScheduled = false;
+        // 回调中可能增删时钟，按副本遍历
+        FrameClock[] clocks = mClocks.toArray(new FrameClock[mClocks.size()]);
+        for (FrameClock clock : clocks) {
+            if (clock.isRunning() && clock.getTicker() == this) {
+                clock.tick(frameTimeNanos);
+            } else {
+                mClocks.remove(clock);
+                clock.onTickerRemoved(this);
+            }
+        }
+        if (!mClocks.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (mIsScheduled) {
+            return;
+        }
+        mIsScheduled = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (mVsyncCallback == null) {
+                mVsyncCallback = new VsyncCallback();
+            }
+            mVsyncCallback.schedule();
+        } else {
+            mMainHandler.postDelayed(this, FALLBACK_INTERVAL);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private final class VsyncCallback implements Choreographer.FrameCallback {
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+
+        void schedule() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            tick(frameTimeNanos);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.liang.anim;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.util.List;
+
+/**
+ * 内存中未解码的序列帧，如从网络下载或从压缩包读出的图片数据。
+ * 来源标识由调用者指定，不能保证下次启动时对应相同的图片，只使用内存缓存，不写入磁盘缓存，
+ * 像素格式、重复帧和变化区域的检测结果也不保存，每次设置时重新检测
+ */
+public class MemoryFrameSource extends EncodedFrameSource {
+    private final String mName;
+    private final byte[][] mFrames;
+    private final int[] mDurations;
+
+    /**
+     * @param name   来源标识，相同标识的来源共用缓存，null表示不缓存
+     * @param frames 每帧的图片数据，按播放顺序排列
+     */
+    public MemoryFrameSource(String name, List<byte[]> frames) {
+        this(name, frames, null);
+    }
+
+    /**
+     * @param name      来源标识，相同标识的来源共用缓存，null表示不缓存
+     * @param frames    每帧的图片数据，按播放顺序排列
+     * @param durations 每帧时长，毫秒，null表示使用控件设置的时长
+     */
+    public MemoryFrameSource(String name, List<byte[]> frames, int[] durations) {
+        mName = name;
+        mFrames = frames.toArray(new byte[frames.size()][]);
+        mDurations = durations == null ? null : durations.clone();
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public int getFrameCount() {
+        return mFrames.length;
+    }
+
+    @Override
+    public int getFrameDuration(int index) {
+        return mDurations != null && index < mDurations.length ? mDurations[index] : 0;
+    }
+
+    @Override
+    public String getFrameKey(int index) {
+        return mName == null ? null : "memory:" + mName + "#" + index;
+    }
+
+    @Override
+    protected Bitmap decodeFrame(int index, BitmapFactory.Options options) {
+        byte[] data = mFrames[index];
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+}
@@ -0,0 +1,249 @@
+package com.liang.anim;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 按系统内存状态调整帧内存占用：收到{@link #onTrimMemory(int)}或{@link #onLowMemory()}时按级别缩小或清空帧缓存和复用池，
+ * 同时降低预解码帧数；内存压力解除后每隔一段时间恢复一部分容量，直到恢复原有大小。
+ * 进程内共享的{@link FrameCache}和{@link BitmapPool}在{@link #install(Context)}时自动纳入管理，
+ * 控件和Drawable创建时会自动安装，自行创建的缓存通过{@link #track(FrameCache)}纳入管理
+ */
+public final class MemoryGovernor implements ComponentCallbacks2 {
+    private static final String TAG = "MemoryGovernor";
+    /**
+     * 每次恢复的容量比例
+     */
+    private static final float RESTORE_STEP = 0.25f;
+    private static final long RESTORE_INTERVAL = 10000;
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+    private static final MemoryGovernor sInstance = new MemoryGovernor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * 纳入管理的缓存和没有内存压力时的容量
+     */
+    private final WeakHashMap<FrameCache, Integer> mFrameCaches = new WeakHashMap<>();
+    private final WeakHashMap<BitmapPool, Integer> mBitmapPools = new WeakHashMap<>();
+    private float mScale = 1;
+    private volatile int mPrefetchLimit = UNLIMITED;
+    private boolean mIsInstalled;
+    private volatile OnCapacityChangedListener mListener;
+    private final Runnable mRestore = new Runnable() {
+        @Override
+        public void run() {
+            restoreStep();
+        }
+    };
+
+    private MemoryGovernor() {
+    }
+
+    public static MemoryGovernor getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * 注册系统内存回调，重复调用无效
+     */
+    public void install(Context context) {
+        synchronized (this) {
+            if (mIsInstalled) {
+                return;
+            }
+            mIsInstalled = true;
+        }
+        context.getApplicationContext().registerComponentCallbacks(this);
+        track(FrameCache.getInstance());
+        track(BitmapPool.getInstance());
+    }
+
+    /**
+     * 将帧缓存纳入管理，按当前的容量比例缩放，只保持弱引用
+     */
+    public synchronized void track(FrameCache frameCache) {
+        if (mFrameCaches.containsKey(frameCache)) {
+            return;
+        }
+        int maxSize = frameCache.getMaxSize();
+        mFrameCaches.put(frameCache, maxSize);
+        if (mScale < 1) {
+            frameCache.setMaxSize((int) (maxSize * mScale));
+        }
+    }
+
+    /**
+     * 将复用池纳入管理，按当前的容量比例缩放，只保持弱引用
+     */
+    public synchronized void track(BitmapPool bitmapPool) {
+        if (mBitmapPools.containsKey(bitmapPool)) {
+            return;
+        }
+        int maxSize = bitmapPool.getMaxSize();
+        mBitmapPools.put(bitmapPool, maxSize);
+        if (mScale < 1) {
+            bitmapPool.setMaxSize((int) (maxSize * mScale));
+        }
+    }
+
+    /**
+     * 设置容量变化监听器，在主线程回调
+     */
+    public void setOnCapacityChangedListener(OnCapacityChangedListener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            reduce(0, 0);
+        } else if (level >= TRIM_MEMORY_BACKGROUND) {
+            reduce(0.25f, 0);
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            reduce(0.5f, 1);
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            reduce(0.25f, 0);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            reduce(0.5f, 1);
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            reduce(0.75f, 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        reduce(0, 0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * 当前容量占没有内存压力时容量的比例
+     */
+    public synchronized float getCapacityScale() {
+        return mScale;
+    }
+
+    /**
+     * 预解码帧数上限，没有内存压力时不限制
+     */
+    int getPrefetchLimit() {
+        return mPrefetchLimit;
+    }
+
+    /**
+     * 纳入管理的帧缓存和复用池当前占用的字节数
+     */
+    public synchronized long getUsedBytes() {
+        long size = 0;
+        for (FrameCache frameCache : mFrameCaches.keySet()) {
+            size += frameCache.getSize();
+        }
+        for (BitmapPool bitmapPool : mBitmapPools.keySet()) {
+            size += bitmapPool.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * 纳入管理的帧缓存和复用池当前的容量
+     */
+    public synchronized long getMaxBytes() {
+        long size = 0;
+        for (FrameCache frameCache : mFrameCaches.keySet()) {
+            size += frameCache.getMaxSize();
+        }
+        for (BitmapPool bitmapPool : mBitmapPools.keySet()) {
+            size += bitmapPool.getMaxSize();
+        }
+        return size;
+    }
+
+    /**
+     * 缩小容量，只会比当前更小，之后开始逐步恢复
+     */
+    private void reduce(float scale, int prefetchLimit) {
+        synchronized (this) {
+            if (mScale >= 1) {
+                // 没有内存压力期间可能重新设置过容量
+                captureCapacity();
+            }
+            mScale = Math.min(mScale, scale);
+            mPrefetchLimit = Math.min(mPrefetchLimit, prefetchLimit);
+            applyCapacity();
+        }
+        Log.d(TAG, "reduce: scale=" + scale + ", prefetchLimit=" + prefetchLimit);
+        mMainHandler.removeCallbacks(mRestore);
+        mMainHandler.postDelayed(mRestore, RESTORE_INTERVAL);
+        notifyCapacityChanged();
+    }
+
+    private void restoreStep() {
+        boolean isRestored;
+        synchronized (this) {
+            mScale = Math.min(1, mScale + RESTORE_STEP);
+            isRestored = mScale >= 1;
+            mPrefetchLimit = isRestored ? UNLIMITED : mPrefetchLimit + 1;
+            applyCapacity();
+        }
+        if (!isRestored) {
+            mMainHandler.postDelayed(mRestore, RESTORE_INTERVAL);
+        }
+        notifyCapacityChanged();
+    }
+
+    private void captureCapacity() {
+        for (Map.Entry<FrameCache, Integer> entry : mFrameCaches.entrySet()) {
+            entry.setValue(entry.getKey().getMaxSize());
+        }
+        for (Map.Entry<BitmapPool, Integer> entry : mBitmapPools.entrySet()) {
+            entry.setValue(entry.getKey().getMaxSize());
+        }
+    }
+
+    private void applyCapacity() {
+        for (Map.Entry<FrameCache, Integer> entry : mFrameCaches.entrySet()) {
+            entry.getKey().setMaxSize((int) (entry.getValue() * mScale));
+        }
+        for (Map.Entry<BitmapPool, Integer> entry : mBitmapPools.entrySet()) {
+            entry.getKey().setMaxSize((int) (entry.getValue() * mScale));
+        }
+    }
+
+    private void notifyCapacityChanged() {
+        final OnCapacityChangedListener listener = mListener;
+        if (listener == null) {
+            return;
+        }
+        final float scale = getCapacityScale();
+        final long usedBytes = getUsedBytes();
+        final long maxBytes = getMaxBytes();
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onCapacityChanged(scale, usedBytes, maxBytes);
+            }
+        });
+    }
+
+    /**
+     * 容量变化监听器
+     */
+    public interface OnCapacityChangedListener {
+        /**
+         * @param scale     当前容量占原有容量的比例
+         * @param usedBytes 当前占用的字节数
+         * @param maxBytes  当前容量
+         */
+        void onCapacityChanged(float scale, long usedBytes, long maxBytes);
+    }
+}
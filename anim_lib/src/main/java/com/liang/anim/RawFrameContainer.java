@@ -0,0 +1,170 @@
+package com.liang.anim;
+
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 预解码序列帧容器，文件中直接保存像素数据，播放时通过内存映射读取并复制到复用的Bitmap中，没有解码开销。
+ * 文件格式（小端序）：
+ * <pre>
+ * magic       4字节 "SQFR"
+ * version     int32 当前为1
+ * width       int32 帧宽
+ * height      int32 帧高
+ * config      int32 1为ARGB_8888，2为RGB_565
+ * frameCount  int32 帧数
+ * duration    int32 每帧时长，毫秒，0表示使用控件设置
+ * reserved    int32
+ * offsets     frameCount个int64，每帧像素数据在文件中的偏移
+ * pixels      每帧width*height*bpp字节，行间无填充，ARGB_8888为预乘透明度的RGBA字节序，RGB_565为小端16位
+ * </pre>
+ * 放在Assets中时必须不压缩存储（aaptOptions noCompress "sqf"），可以使用anim_packer模块的RawFramePacker生成
+ */
+final class RawFrameContainer implements FrameSource {
+    static final String FILE_EXTENSION = ".sqf";
+    static final int MAGIC = 0x52465153;
+    static final int VERSION = 1;
+    static final int CONFIG_ARGB_8888 = 1;
+    static final int CONFIG_RGB_565 = 2;
+    private static final int HEADER_SIZE = 32;
+
+    private final String mName;
+    private final MappedByteBuffer mBuffer;
+    private final int mWidth;
+    private final int mHeight;
+    private final Bitmap.Config mConfig;
+    private final int mFrameCount;
+    private final int mDuration;
+    private final int mFrameSize;
+    private final long[] mOffsets;
+
+    private RawFrameContainer(String name, MappedByteBuffer buffer) throws IOException {
+        mName = name;
+        mBuffer = buffer;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(name + " is not a raw frame container");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(name + ": unsupported version " + version);
+        }
+        mWidth = buffer.getInt(8);
+        mHeight = buffer.getInt(12);
+        int config = buffer.getInt(16);
+        if (config == CONFIG_ARGB_8888) {
+            mConfig = Bitmap.Config.ARGB_8888;
+        } else if (config == CONFIG_RGB_565) {
+            mConfig = Bitmap.Config.RGB_565;
+        } else {
+            throw new IOException(name + ": unsupported config " + config);
+        }
+        mFrameCount = buffer.getInt(20);
+        mDuration = buffer.getInt(24);
+        if (mWidth <= 0 || mHeight <= 0 || mFrameCount < 0
+                || HEADER_SIZE + 8L * mFrameCount > buffer.capacity()) {
+            throw new IOException(name + ": corrupted header");
+        }
+        mFrameSize = BitmapPool.getBitmapByteSize(mWidth, mHeight, mConfig);
+        mOffsets = new long[mFrameCount];
+        for (int i = 0; i < mFrameCount; i++) {
+            long offset = buffer.getLong(HEADER_SIZE + 8 * i);
+            if (offset < 0 || offset + mFrameSize > buffer.capacity()) {
+                throw new IOException(name + ": frame " + i + " out of range");
+            }
+            mOffsets[i] = offset;
+        }
+    }
+
+    /**
+     * 映射磁盘上的容器文件，名称包含修改时间和大小，文件被替换后不再使用旧的缓存
+     */
+    static RawFrameContainer open(File file) throws IOException {
+        String name = file.getAbsolutePath() + "@" + file.lastModified() + "/" + file.length();
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            return new RawFrameContainer(name, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * 映射Assets中不压缩存储的容器文件
+     */
+    static RawFrameContainer open(String name, AssetFileDescriptor descriptor) throws IOException {
+        FileInputStream inputStream = descriptor.createInputStream();
+        try {
+            MappedByteBuffer buffer = inputStream.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getLength());
+            return new RawFrameContainer(name, buffer);
+        } finally {
+            inputStream.close();
+            descriptor.close();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 容器中设置的每帧时长，0表示未设置
+     */
+    @Override
+    public int getFrameDuration(int index) {
+        return mDuration;
+    }
+
+    @Override
+    public String getFrameKey(int index) {
+        return "raw:" + mName + "#" + index;
+    }
+
+    /**
+     * 像素按容器中保存的尺寸和格式复制，不缩放
+     */
+    @Override
+    public Bitmap decode(int index, int width, int height, Bitmap.Config config, BitmapPool bitmapPool) {
+        return decode(index, bitmapPool);
+    }
+
+    Bitmap.Config getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * 把某一帧的像素复制到复用池中取出的Bitmap中
+     *
+     * @param index      帧下标
+     * @param bitmapPool 复用池
+     */
+    Bitmap decode(int index, BitmapPool bitmapPool) {
+        if (index < 0 || index >= mFrameCount) {
+            return null;
+        }
+        Bitmap bitmap = bitmapPool.obtain(mWidth, mHeight, mConfig);
+        synchronized (this) {
+            int offset = (int) mOffsets[index];
+            mBuffer.limit(offset + mFrameSize);
+            mBuffer.position(offset);
+            bitmap.copyPixelsFromBuffer(mBuffer);
+            mBuffer.clear();
+        }
+        return bitmap;
+    }
+}
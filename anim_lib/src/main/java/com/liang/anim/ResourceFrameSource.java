@@ -0,0 +1,68 @@
+package com.liang.anim;
+
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.ArrayRes;
+
+/**
+ * Res中的序列帧，按资源id列表播放，解码时不按屏幕密度缩放
+ */
+public class ResourceFrameSource extends EncodedFrameSource {
+    private final Resources mResources;
+    private final String mName;
+    private final int[] mResIds;
+
+    /**
+     * @param resources 资源
+     * @param name      来源标识
+     * @param resIds    帧资源id，按播放顺序排列
+     */
+    public ResourceFrameSource(Resources resources, String name, int[] resIds) {
+        mResources = resources;
+        mName = name;
+        mResIds = resIds.clone();
+    }
+
+    /**
+     * 按资源列表集合创建
+     *
+     * @param resources 资源
+     * @param arrayRes  资源列表集合，一般在arrays.xml里边定义
+     */
+    public static ResourceFrameSource fromArray(Resources resources, @ArrayRes int arrayRes) {
+        TypedArray typedArray = resources.obtainTypedArray(arrayRes);
+        int[] resIds = new int[typedArray.length()];
+        for (int index = 0; index < resIds.length; index++) {
+            resIds[index] = typedArray.getResourceId(index, 0);
+        }
+        typedArray.recycle();
+        return new ResourceFrameSource(resources, "res:" + arrayRes, resIds);
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public int getFrameCount() {
+        return mResIds.length;
+    }
+
+    @Override
+    public String getFrameKey(int index) {
+        return mResIds[index] == 0 ? null : "res:" + mResIds[index];
+    }
+
+    @Override
+    public Bitmap decode(int index, int width, int height, Bitmap.Config config, BitmapPool bitmapPool) {
+        return mResIds[index] == 0 ? null : super.decode(index, width, height, config, bitmapPool);
+    }
+
+    @Override
+    protected Bitmap decodeFrame(int index, BitmapFactory.Options options) {
+        return BitmapFactory.decodeResource(mResources, mResIds[index], options);
+    }
+}
@@ -0,0 +1,855 @@
+package com.liang.anim;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.ArrayRes;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 序列帧动画Drawable，与{@link SequenceFrameView}共用帧来源、缓存、预解码和播放时钟，
+ * 在普通控件层级中绘制，不需要为每个动画创建单独的Surface，适合在列表项中同时播放大量小动画。
+ * 解码在共享线程池中进行，解码完成后在主线程切换当前帧并重绘，不再使用时调用{@link #release()}
+ */
+public class SequenceFrameDrawable extends Drawable implements Animatable {
+    private static final String TAG = "SequenceFrameDrawable";
+    private static final int DEFAULT_PREFETCH_DEPTH = 1;
+
+    private final Context mContext;
+    private final FrameMetrics mMetrics = new FrameMetrics();
+    private final FrameLoader mLoader = new FrameLoader(mMetrics);
+    private final FramePrefetcher mPrefetcher;
+    private final FrameClock mFrameClock;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * 解码队列的任务持有，release后新建的队列与旧队列的任务不会同时执行
+     */
+    private final Object mRenderLock = new Object();
+    private volatile FrameScheduler.Lane mLane;
+    private final AtomicBoolean mIsRunning = new AtomicBoolean();
+    private volatile boolean mIsLoop;
+    private volatile long mDuration = 100;
+    private volatile boolean mIsDownsample = true;
+    private volatile boolean mIsAutoConfig;
+    private volatile boolean mIsDedupe;
+    private volatile boolean mIsRenderPending;
+    private volatile long mDueFrame;
+    /**
+     * 以下字段只在解码队列访问
+     */
+    private int mIndex;
+    private int mClockStartIndex;
+    /**
+     * mIndex对应的序列，后台合并重复帧后与当前序列不同
+     */
+    private FrameSource mPlayingSource;
+    private Closeable mOwnedSource;
+    /**
+     * 解码完成等待主线程显示的帧，只在持有mPendingLock时访问
+     */
+    private final Object mPendingLock = new Object();
+    private boolean mHasPendingFrame;
+    private Bitmap mPendingBitmap;
+    /**
+     * 取得mPendingBitmap的缓存，切换缓存后帧仍需归还给原来的缓存
+     */
+    private FrameCache mPendingCache;
+    private int mPendingIndex;
+    private FrameSnapshot mPendingFrames;
+    /**
+     * release的次数，解码前后不同说明解码期间调用了release，解码结果直接丢弃
+     */
+    private volatile int mReleaseCount;
+    /**
+     * 以下字段只在主线程访问
+     */
+    private Bitmap mBitmap;
+    private FrameCache mBitmapCache;
+    private int mBitmapIndex;
+    private FrameSnapshot mBitmapFrames;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
+    private int mAlpha = 255;
+    private SequenceFrameView.AnimationListener mAnimationListener;
+    /**
+     * 最新请求的进度，解码队列每次只绘制最新的进度
+     */
+    private volatile float mProgress;
+    private final AtomicBoolean mIsProgressPending = new AtomicBoolean();
+    private final Runnable mDrawProgress = new Runnable() {
+        @Override
+        public void run() {
+            // 先清除标记再读取进度，之后的请求会重新提交
+            mIsProgressPending.set(false);
+            float progress = mProgress;
+            synchronized (mRenderLock) {
+                syncFrameSource();
+                int frameCount = mLoader.getFrameCount();
+                if (frameCount == 0) {
+                    return;
+                }
+                FrameSource source = mLoader.getSource();
+                if (source instanceof DedupedFrameSource) {
+                    // 按合并前的帧计算，保持进度与时间对应
+                    DedupedFrameSource deduped = (DedupedFrameSource) source;
+                    mIndex = deduped.getFrameAt(Math.round((deduped.getSourceFrameCount() - 1) * progress));
+                } else {
+                    mIndex = Math.round((frameCount - 1) * progress);
+                }
+                drawFrame(mIndex);
+            }
+        }
+    };
+    private final Runnable mRenderDueFrame = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mRenderLock) {
+                try {
+                    drawDueFrame(mClockStartIndex + mDueFrame);
+                } finally {
+                    mIsRenderPending = false;
+                }
+            }
+        }
+    };
+    private final Runnable mShowPendingFrame = new Runnable() {
+        @Override
+        public void run() {
+            showPendingFrame();
+        }
+    };
+
+    public SequenceFrameDrawable(Context context) {
+        mContext = context.getApplicationContext();
+        MemoryGovernor.getInstance().install(context);
+        mPrefetcher = new FramePrefetcher(new FramePrefetcher.Decoder() {
+            @Override
+            public Bitmap decode(int index) {
+                return mLoader.decode(index);
+            }
+
+            @Override
+            public void recycle(Bitmap bitmap) {
+                mLoader.release(bitmap);
+            }
+        }, DEFAULT_PREFETCH_DEPTH);
+        mFrameClock = new FrameClock(new FrameClock.Callback() {
+            @Override
+            public boolean onFrameDue(long frame) {
+                FrameScheduler.Lane lane = mLane;
+                if (lane == null || mIsRenderPending) {
+                    return false;
+                }
+                mIsRenderPending = true;
+                mDueFrame = frame;
+                lane.post(mRenderDueFrame);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * 设置动画监听器，回调在主线程
+     *
+     * @param animationListener 监听器
+     */
+    public void setAnimationListener(SequenceFrameView.AnimationListener animationListener) {
+        mAnimationListener = animationListener;
+    }
+
+    /**
+     * 设置是否循环播放，默认不循环
+     */
+    public void setLoop(boolean loop) {
+        mIsLoop = loop;
+    }
+
+    public boolean isLoop() {
+        return mIsLoop;
+    }
+
+    /**
+     * 设置每帧时长，来源指定了帧时长时使用来源的时长，下次开始播放时生效
+     *
+     * @param duration 毫秒，默认100
+     */
+    public void setDuration(long duration) {
+        mDuration = duration;
+    }
+
+    public long getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * 设置预解码帧数，列表中同时播放的动画较多，默认只预解码1帧
+     *
+     * @param prefetchDepth 预解码帧数，0表示关闭预解码
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        mPrefetcher.setDepth(prefetchDepth);
+    }
+
+    public int getPrefetchDepth() {
+        return mPrefetcher.getDepth();
+    }
+
+    /**
+     * 设置是否按绘制区域解码，详见{@link SequenceFrameView#setDownsample(boolean)}
+     *
+     * @param downsample 是否按绘制区域解码，默认开启
+     */
+    public void setDownsample(boolean downsample) {
+        mIsDownsample = downsample;
+        updateTargetSize(getBounds());
+    }
+
+    public boolean isDownsample() {
+        return mIsDownsample;
+    }
+
+    /**
+     * 设置是否自动选择像素格式，详见{@link SequenceFrameView#setAutoConfig(boolean)}
+     *
+     * @param autoConfig 是否自动选择像素格式，默认关闭，下次设置动画资源时生效
+     */
+    public void setAutoConfig(boolean autoConfig) {
+        mIsAutoConfig = autoConfig;
+    }
+
+    public boolean isAutoConfig() {
+        return mIsAutoConfig;
+    }
+
+    /**
+     * 设置是否合并重复帧，详见{@link SequenceFrameView#setDedupe(boolean)}
+     *
+     * @param dedupe 是否合并重复帧，默认关闭，下次设置动画资源时生效
+     */
+    public void setDedupe(boolean dedupe) {
+        mIsDedupe = dedupe;
+    }
+
+    public boolean isDedupe() {
+        return mIsDedupe;
+    }
+
+    /**
+     * 设置解码复用池，默认使用进程内共享的{@link BitmapPool#getInstance()}
+     */
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        mLoader.setBitmapPool(bitmapPool);
+    }
+
+    public BitmapPool getBitmapPool() {
+        return mLoader.getBitmapPool();
+    }
+
+    /**
+     * 设置已解码帧缓存，默认使用进程内共享的{@link FrameCache#getInstance()}，
+     * 列表中多项播放同一序列时共用解码结果
+     */
+    public void setFrameCache(final FrameCache frameCache) {
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    // 预取和等待显示的帧从旧缓存取得，先归还给旧缓存再切换，
+                    // 正在显示的帧记录了取得它的缓存，替换时归还给旧缓存
+                    mPrefetcher.clear();
+                    synchronized (mPendingLock) {
+                        releasePendingBitmap();
+                    }
+                    mLoader.setFrameCache(frameCache);
+                }
+            }
+        });
+    }
+
+    public FrameCache getFrameCache() {
+        return mLoader.getFrameCache();
+    }
+
+    /**
+     * 设置磁盘帧缓存，详见{@link SequenceFrameView#setDiskCache(DiskFrameCache)}
+     *
+     * @param diskCache 磁盘缓存，null表示关闭
+     */
+    public void setDiskCache(DiskFrameCache diskCache) {
+        mLoader.setDiskCache(diskCache);
+    }
+
+    public DiskFrameCache getDiskCache() {
+        return mLoader.getDiskCache();
+    }
+
+    /**
+     * 当前播放性能统计的快照，只包括解码、调度和缓存的统计，绘制由所在控件完成
+     */
+    public FrameMetrics.Snapshot getFrameMetrics() {
+        return mMetrics.snapshot(mFrameClock.getDroppedFrames(), mLoader.getFrameCache().getSize(),
+                mLoader.getBitmapPool().getSize());
+    }
+
+    /**
+     * 设置Assets动画资源，资源文件夹的格式与{@link SequenceFrameView#setAnimAssets(String)}相同
+     *
+     * @param assetsFolderPath Assets资源文件夹路径
+     */
+    public void setAnimAssets(final String assetsFolderPath) {
+        if (TextUtils.isEmpty(assetsFolderPath)) {
+            Log.w(TAG, "setAnimAssets: The path is not found.");
+            return;
+        }
+        FrameSnapshot preloaded = FramePreloader.take(assetsFolderPath);
+        if (preloaded != null) {
+            FrameSource source = FrameLoader.unwrap(preloaded.getSource());
+            bindPreloaded(preloaded, source instanceof Closeable ? (Closeable) source : null);
+            return;
+        }
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    FrameSource source = FrameLoader.openAssets(mContext.getAssets(), assetsFolderPath);
+                    synchronized (mRenderLock) {
+                        applyFrameSource(source, source instanceof Closeable ? (Closeable) source : null);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "setAnimAssets: failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置Res动画资源
+     *
+     * @param arrayRes 资源列表集合，一般在arrays.xml里边定义
+     */
+    public void setAnimResource(@ArrayRes final int arrayRes) {
+        if (arrayRes == 0) {
+            Log.w(TAG, "setAnimResource: The integer-array resources is not found.");
+            return;
+        }
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    applyFrameSource(ResourceFrameSource.fromArray(mContext.getResources(), arrayRes), null);
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置压缩包中的序列帧，详见{@link ZipFrameSource}
+     *
+     * @param file   压缩包
+     * @param folder 压缩包中的文件夹路径，""表示根目录
+     */
+    public void setAnimZipFile(final File file, final String folder) {
+        if (file == null || !file.isFile()) {
+            Log.w(TAG, "setAnimZipFile: The file is not found.");
+            return;
+        }
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ZipFrameSource source = ZipFrameSource.open(file, folder == null ? "" : folder);
+                    synchronized (mRenderLock) {
+                        applyFrameSource(source, source);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "setAnimZipFile: failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置自定义的序列帧来源
+     *
+     * @param source 序列帧来源
+     */
+    public void setFrameSource(final FrameSource source) {
+        if (source == null) {
+            Log.w(TAG, "setFrameSource: The source is null.");
+            return;
+        }
+        FrameSnapshot preloaded = FramePreloader.take(source);
+        if (preloaded != null) {
+            bindPreloaded(preloaded, null);
+            return;
+        }
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    applyFrameSource(source, null);
+                }
+            }
+        });
+    }
+
+    public FrameSource getFrameSource() {
+        return mLoader.getSource();
+    }
+
+    /**
+     * 绑定{@link FramePreloader}预加载的序列，从第一帧开始播放，第一帧已缓存时在主线程直接显示，需要在主线程调用
+     *
+     * @param owned 由Drawable关闭的来源
+     */
+    private void bindPreloaded(FrameSnapshot frames, final Closeable owned) {
+        Rect bounds = getBounds();
+        FrameCache frameCache = mLoader.getFrameCache();
+        Bitmap bitmap = mLoader.peek(frames, 0, mIsDownsample ? bounds.width() : 0,
+                mIsDownsample ? bounds.height() : 0);
+        if (bitmap != null) {
+            releaseBitmap();
+            mBitmap = bitmap;
+            mBitmapCache = frameCache;
+            mBitmapIndex = 0;
+            mBitmapFrames = frames;
+            invalidateSelf();
+        }
+        final FrameSource source = FrameLoader.unwrap(frames.getSource());
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    mIndex = 0;
+                    applyFrameSource(source, owned);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param owned 由Drawable打开的来源，被替换或release时关闭
+     */
+    private void applyFrameSource(FrameSource source, Closeable owned) {
+        FrameSnapshot frames = mLoader.setSource(source);
+        closeQuietly(mOwnedSource);
+        mOwnedSource = owned;
+        mLoader.analyze(mContext, frames, mIsAutoConfig, mIsDedupe, false);
+        mPlayingSource = mLoader.getSource();
+        mPrefetcher.clear();
+        if (mIndex >= mLoader.getFrameCount()) {
+            mIndex = 0;
+        }
+        drawFrame(mIndex);
+        if (mIsRunning.get()) {
+            startClock();
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!mIsRunning.compareAndSet(false, true)) {
+            return;
+        }
+        if (mAnimationListener != null) {
+            mAnimationListener.onAnimStart();
+        }
+        if (isVisible()) {
+            doBackground(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (mRenderLock) {
+                        if (mIndex >= mLoader.getFrameCount()) {
+                            mIndex = 0;
+                        }
+                        startClock();
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!mIsRunning.compareAndSet(true, false)) {
+            return;
+        }
+        pauseClock();
+        if (mAnimationListener != null) {
+            mAnimationListener.onAnimEnd();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mIsRunning.get();
+    }
+
+    /**
+     * 按整体进度显示某一帧，播放中调用无效，连续调用时只绘制最新的进度，尚未开始绘制的旧进度直接丢弃
+     *
+     * @param progress 动画进度 0.0 - 1.0
+     */
+    public void drawProgress(float progress) {
+        if (mIsRunning.get()) {
+            return;
+        }
+        mProgress = Math.max(0, Math.min(1, progress));
+        if (!mIsProgressPending.compareAndSet(false, true)) {
+            return;
+        }
+        if (!doBackground(mDrawProgress)) {
+            mIsProgressPending.set(false);
+        }
+    }
+
+    /**
+     * 释放解码队列、预解码的帧和当前显示的帧，之后可以重新设置动画资源，
+     * 在列表项被回收或页面销毁时调用
+     */
+    public void release() {
+        stop();
+        mLoader.setSource(null);
+        synchronized (mPendingLock) {
+            // 旧队列中正在执行的任务解码完成后不再交给主线程显示
+            mReleaseCount++;
+            releasePendingBitmap();
+        }
+        mPrefetcher.quit();
+        final FrameScheduler.Lane lane = mLane;
+        mLane = null;
+        if (lane != null) {
+            lane.quit();
+        }
+        // 退出的队列中未执行的进度请求已被丢弃
+        mIsProgressPending.set(false);
+        final FrameScheduler.Lane cleanup = FrameScheduler.getInstance().newLane();
+        cleanup.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronized (mRenderLock) {
+                        closeQuietly(mOwnedSource);
+                        mOwnedSource = null;
+                        mIndex = 0;
+                    }
+                } finally {
+                    cleanup.quit();
+                }
+            }
+        });
+        mMainHandler.removeCallbacks(mShowPendingFrame);
+        releaseBitmap();
+        mBitmapFrames = null;
+        invalidateSelf();
+    }
+
+    @Override
+    public boolean setVisible(boolean visible, boolean restart) {
+        boolean changed = super.setVisible(visible, restart);
+        if (!mIsRunning.get()) {
+            return changed;
+        }
+        // 不可见时只暂停计时，保留播放状态，重新可见后从暂停的帧继续
+        if (!visible) {
+            pauseClock();
+        } else if (changed || restart) {
+            doBackground(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (mRenderLock) {
+                        startClock();
+                    }
+                }
+            });
+        }
+        return changed;
+    }
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        super.onBoundsChange(bounds);
+        updateTargetSize(bounds);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        Bitmap bitmap = mBitmap;
+        FrameSnapshot frames = mBitmapFrames;
+        if (bitmap == null || bitmap.isRecycled() || frames == null) {
+            return;
+        }
+        Rect bounds = getBounds();
+        Paint paint = mPaint;
+        if (bitmap.getConfig() == Bitmap.Config.ALPHA_8) {
+            // ALPHA_8格式的帧只有透明度，按检测出的遮罩颜色绘制
+            int tintColor = frames.getFormat().getTintColor();
+            paint.setColor(tintColor);
+            paint.setAlpha(Color.alpha(tintColor) * mAlpha / 255);
+        } else {
+            paint.setAlpha(mAlpha);
+        }
+        FrameAtlas atlas = frames.getAtlas();
+        if (atlas != null && mBitmapIndex < atlas.getFrameCount()) {
+            atlas.getSourceRect(mBitmapIndex, bitmap, mSrcRect);
+            atlas.getDestRect(mBitmapIndex, bounds, mDstRect);
+            canvas.drawBitmap(bitmap, mSrcRect, mDstRect, paint);
+        } else {
+            canvas.drawBitmap(bitmap, null, bounds, paint);
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (mAlpha == alpha) {
+            return;
+        }
+        mAlpha = alpha;
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    /**
+     * 从当前帧开始计时，需要持有mRenderLock
+     */
+    private void startClock() {
+        if (!mIsRunning.get() || !isVisible() || mLoader.getFrameCount() == 0) {
+            return;
+        }
+        syncFrameSource();
+        mClockStartIndex = mIndex;
+        mFrameClock.start(mLoader.getClockDurations(mIndex, mDuration));
+    }
+
+    private void pauseClock() {
+        mFrameClock.stop();
+        FrameScheduler.Lane lane = mLane;
+        if (lane != null) {
+            lane.removeCallbacks(mRenderDueFrame);
+        }
+        mIsRenderPending = false;
+    }
+
+    /**
+     * 绘制区域变化后更新解码尺寸，已预解码的帧按旧尺寸解码，需要丢弃，当前帧重新解码
+     */
+    private void updateTargetSize(Rect bounds) {
+        final int width = mIsDownsample ? bounds.width() : 0;
+        final int height = mIsDownsample ? bounds.height() : 0;
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    if (mLoader.setTargetSize(width, height)) {
+                        mPrefetcher.clear();
+                        if (!mIsRunning.get()) {
+                            drawFrame(mIndex);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 绘制时钟计算出的帧
+     *
+     * @param index 从头算起的帧下标，循环播放时可能超出总帧数
+     */
+    private void drawDueFrame(long index) {
+        if (!mIsRunning.get()) {
+            return;
+        }
+        FrameSource playing = mPlayingSource;
+        int playingCount = playing == null ? 0 : playing.getFrameCount();
+        if (mLoader.getSource() != playing && playingCount > 0 && (index < playingCount || mIsLoop)) {
+            // 时钟按替换前的帧时长计时，换算到新序列的帧后重新开始计时
+            mIndex = (int) (index % playingCount);
+            startClock();
+            return;
+        }
+        syncFrameSource();
+        int frameCount = mLoader.getFrameCount();
+        if (frameCount == 0) {
+            return;
+        }
+        if (index >= frameCount) {
+            if (mIsLoop) {
+                index %= frameCount;
+            } else {
+                if (!mIsRunning.compareAndSet(true, false)) {
+                    return;
+                }
+                mFrameClock.stop();
+                mIndex = 0;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mAnimationListener != null) {
+                            mAnimationListener.onAnimEnd();
+                        }
+                    }
+                });
+                return;
+            }
+        }
+        mIndex = (int) index;
+        drawFrame(mIndex);
+        mIndex = (mIndex + 1) % frameCount;
+    }
+
+    /**
+     * 后台合并重复帧完成后序列会被替换，当前帧换算为合并后的下标继续播放，需要持有mRenderLock
+     */
+    private void syncFrameSource() {
+        FrameSource source = mLoader.getSource();
+        if (source == mPlayingSource) {
+            return;
+        }
+        if (source instanceof DedupedFrameSource && ((DedupedFrameSource) source).getSource() == mPlayingSource) {
+            mIndex = ((DedupedFrameSource) source).getFrameAt(mIndex);
+        }
+        mPlayingSource = source;
+        mPrefetcher.clear();
+        if (mIndex >= mLoader.getFrameCount()) {
+            mIndex = 0;
+        }
+    }
+
+    /**
+     * 在解码队列中取出某一帧，交给主线程显示
+     *
+     * @param index 帧下标
+     */
+    private void drawFrame(int index) {
+        int releaseCount = mReleaseCount;
+        Bitmap bitmap = mPrefetcher.take(index);
+        mPrefetcher.prefetch(index, 1, mLoader.getFrameCount(), mIsLoop);
+        if (bitmap == null) {
+            bitmap = mLoader.decode(index);
+        } else {
+            mMetrics.recordPrefetchHit();
+        }
+        FrameSnapshot frames = mLoader.getFrames();
+        if (bitmap == null && !frames.isEmptyFrame(index)) {
+            return;
+        }
+        boolean isScheduled;
+        synchronized (mPendingLock) {
+            if (releaseCount != mReleaseCount) {
+                mLoader.release(bitmap);
+                return;
+            }
+            // 主线程来不及显示的帧直接丢弃
+            isScheduled = mHasPendingFrame;
+            if (mPendingBitmap != null) {
+                mPendingCache.release(mPendingBitmap);
+            }
+            mPendingBitmap = bitmap;
+            mPendingCache = mLoader.getFrameCache();
+            mPendingIndex = index;
+            mPendingFrames = frames;
+            mHasPendingFrame = true;
+        }
+        if (!isScheduled) {
+            mMainHandler.post(mShowPendingFrame);
+        }
+    }
+
+    /**
+     * 在主线程切换到解码完成的帧，旧帧归还给缓存
+     */
+    private void showPendingFrame() {
+        Bitmap bitmap;
+        FrameCache frameCache;
+        synchronized (mPendingLock) {
+            if (!mHasPendingFrame) {
+                return;
+            }
+            bitmap = mPendingBitmap;
+            frameCache = mPendingCache;
+            mBitmapIndex = mPendingIndex;
+            mBitmapFrames = mPendingFrames;
+            mPendingBitmap = null;
+            mPendingCache = null;
+            mPendingFrames = null;
+            mHasPendingFrame = false;
+        }
+        releaseBitmap();
+        mBitmap = bitmap;
+        mBitmapCache = frameCache;
+        invalidateSelf();
+    }
+
+    /**
+     * 丢弃等待显示的帧，需要持有mPendingLock
+     */
+    private void releasePendingBitmap() {
+        if (mPendingBitmap != null) {
+            mPendingCache.release(mPendingBitmap);
+        }
+        mPendingBitmap = null;
+        mPendingCache = null;
+        mPendingFrames = null;
+        mHasPendingFrame = false;
+    }
+
+    /**
+     * 当前显示的帧归还给取得它的缓存，只在主线程调用
+     */
+    private void releaseBitmap() {
+        if (mBitmap != null) {
+            mBitmapCache.release(mBitmap);
+        }
+        mBitmap = null;
+        mBitmapCache = null;
+    }
+
+    /**
+     * @return 队列刚好被release退出时返回false
+     */
+    private boolean doBackground(Runnable runnable) {
+        FrameScheduler.Lane lane = mLane;
+        if (lane == null || lane.isQuit()) {
+            lane = FrameScheduler.getInstance().newLane();
+            mLane = lane;
+        }
+        return lane.post(runnable);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.w(TAG, "closeQuietly: failed", e);
+            }
+        }
+    }
+}
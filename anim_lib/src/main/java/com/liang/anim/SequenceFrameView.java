@@ -1,49 +1,161 @@
 package com.liang.anim;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.AssetManager;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.graphics.drawable.Animatable;
 import android.graphics.drawable.Drawable;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
 import android.support.annotation.ArrayRes;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.util.SparseArray;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 序列帧动画显示控件
  */
 public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Callback, Runnable, Animatable {
     private static final String TAG = "SequenceFrameView";
-    private final SparseArray<String> mAssetsPath = new SparseArray<>();
-    @SuppressLint("UseSparseArrays")
-    private final SparseArray<Integer> mArrayResIds = new SparseArray<>();
+    private static final int DEFAULT_PREFETCH_DEPTH = 2;
+    /**
+     * 每帧绘制后延迟duration再绘制下一帧，解码绘制耗时会累积，实际播放比duration慢
+     */
+    public static final int CLOCK_MODE_DELAYED = 0;
+    /**
+     * 按开始播放后经过的时间计算应绘制的帧，跟随屏幕刷新绘制，来不及绘制的帧直接跳过
+     */
+    public static final int CLOCK_MODE_VSYNC = 1;
+    private final FrameMetrics mMetrics = new FrameMetrics();
+    /**
+     * 当前序列和缓存，序列整体替换，读取时不加锁
+     */
+    private final FrameLoader mLoader = new FrameLoader(mMetrics);
+    /**
+     * 由控件打开的来源，被替换或控件移除时关闭，只在绘制线程访问
+     */
+    private Closeable mOwnedSource;
     private Rect drawRect = new Rect();
-    private HandlerThread mHandlerThread;
-    private Handler mHandler;
-    private boolean mIsRunning;
-    private boolean mIsInitialized;
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
+    private volatile boolean mIsDirtyRegion;
+    private final DirtyRegions mDirtyRegions = new DirtyRegions();
+    private final Rect mDirtyRect = new Rect();
+    private int mLastDrawnIndex = -1;
+    /**
+     * 最后绘制的帧标识，下一帧内容相同时不再解码和重绘，只在绘制线程访问
+     */
+    private String mLastFrameKey;
+    private volatile FrameScheduler.Lane mHandler;
+    private final AtomicBoolean mIsRunning = new AtomicBoolean();
+    /**
+     * Surface可用，只在持有mSurfaceLock时修改
+     */
+    private volatile boolean mIsInitialized;
     private long mDuration;
     private boolean mIsLoop;
     private int mIndex = 0;
     private AssetManager mAssetsManager;
     private AnimationListener mAnimationListener;
-    private Drawable mBackgroundDrawable;
+    private volatile Drawable mBackgroundDrawable;
+    /**
+     * 绘制线程的任务持有，保证Surface重建后新旧绘制队列的任务不会同时执行，主线程不获取
+     */
+    private final Object mRenderLock = new Object();
+    /**
+     * 只在lockCanvas到unlockCanvasAndPost之间持有，surfaceDestroyed返回后不再访问Surface
+     */
+    private final Object mSurfaceLock = new Object();
+    private final FramePrefetcher mPrefetcher;
+    private int mDirection = 1;
+    private volatile boolean mIsDownsample;
+    private volatile int mClockMode;
+    /**
+     * 由{@link FramePlaybackManager}管理时使用共用的节拍，统一按{@link #CLOCK_MODE_VSYNC}计时
+     */
+    private volatile boolean mIsSharedClock;
+    /**
+     * 被{@link FramePlaybackManager}暂停，保留播放状态，不解码也不绘制
+     */
+    private volatile boolean mIsSuspended;
+    private final FrameClock mFrameClock;
+    private volatile boolean mIsRenderPending;
+    private volatile long mDueFrame;
+    private int mClockStartIndex;
+    /**
+     * mIndex对应的序列，后台合并重复帧后与当前序列不同，只在绘制线程访问
+     */
+    private FrameSource mPlayingSource;
+    /**
+     * 绑定的预加载序列，绘制线程绘制之前Surface可用时在主线程直接绘制已缓存的第一帧
+     */
+    private volatile FrameSnapshot mBindingFrames;
+    private volatile boolean mIsAutoConfig;
+    private volatile boolean mIsDedupe;
+    private volatile boolean mIsScrubbing;
+    /**
+     * 最新请求的进度，绘制线程每次只绘制最新的进度
+     */
+    private volatile float mProgress;
+    private final AtomicBoolean mIsProgressPending = new AtomicBoolean();
+    /**
+     * 按进度绘制的帧，进度变化没有跨帧时不再重绘，只在绘制线程访问
+     */
+    private int mProgressIndex = -1;
+    private final Paint mTintPaint = new Paint();
+    private FrameMetrics.OnFrameMetricsListener mMetricsListener;
+    private long mMetricsIntervalNanos;
+    private long mNextDueNanos;
+    private volatile long mDueNanos;
+    private long mFrameDueNanos;
+    private final Runnable mDrawProgress = new Runnable() {
+        @Override
+        public void run() {
+            // 先清除标记再读取进度，之后的请求会重新提交
+            mIsProgressPending.set(false);
+            float progress = mProgress;
+            synchronized (mRenderLock) {
+                syncFrameSource();
+                int frameCount = getFrameCount();
+                if (frameCount > 0) {
+                    int index = getProgressIndex(progress);
+                    if (index == mProgressIndex && index == mIndex) {
+                        return;
+                    }
+                    mDirection = index < mIndex ? -1 : 1;
+                    mIndex = index;
+                }
+                drawFrame(mIndex);
+                mProgressIndex = mIndex;
+            }
+        }
+    };
+    private final Runnable mRenderDueFrame = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mRenderLock) {
+                try {
+                    mMetrics.recordLateness(System.nanoTime() - mDueNanos);
+                    mFrameDueNanos = mDueNanos;
+                    drawDueFrame(mClockStartIndex + mDueFrame);
+                } finally {
+                    mIsRenderPending = false;
+                }
+            }
+        }
+    };
 
     public SequenceFrameView(Context context) {
         this(context, null);
@@ -55,13 +167,49 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
 
     public SequenceFrameView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        MemoryGovernor.getInstance().install(context);
         TypedArray typedArray = context.obtainStyledAttributes(attrs, R.styleable.SequenceFrameView,
                 defStyleAttr, 0);
         mIsLoop = typedArray.getBoolean(R.styleable.SequenceFrameView_loop, false);
         mDuration = typedArray.getInt(R.styleable.SequenceFrameView_duration, 100);
+        int prefetchDepth = typedArray.getInt(R.styleable.SequenceFrameView_prefetchDepth, DEFAULT_PREFETCH_DEPTH);
+        mIsDownsample = typedArray.getBoolean(R.styleable.SequenceFrameView_downsample, true);
+        mClockMode = typedArray.getInt(R.styleable.SequenceFrameView_clockMode, CLOCK_MODE_VSYNC);
+        mIsDirtyRegion = typedArray.getBoolean(R.styleable.SequenceFrameView_dirtyRegion, false);
+        mIsAutoConfig = typedArray.getBoolean(R.styleable.SequenceFrameView_autoConfig, false);
+        mIsScrubbing = typedArray.getBoolean(R.styleable.SequenceFrameView_scrubbing, false);
+        mIsDedupe = typedArray.getBoolean(R.styleable.SequenceFrameView_dedupe, false);
+        if (typedArray.getBoolean(R.styleable.SequenceFrameView_diskCache, false)) {
+            mLoader.setDiskCache(DiskFrameCache.getInstance(context));
+        }
         String typedArrayPath = typedArray.getString(R.styleable.SequenceFrameView_animAssets);
         int arrayResourceId = typedArray.getResourceId(R.styleable.SequenceFrameView_animResource, 0);
         typedArray.recycle();
+        mPrefetcher = new FramePrefetcher(new FramePrefetcher.Decoder() {
+            @Override
+            public Bitmap decode(int index) {
+                return mLoader.decode(index);
+            }
+
+            @Override
+            public void recycle(Bitmap bitmap) {
+                mLoader.release(bitmap);
+            }
+        }, prefetchDepth);
+        mFrameClock = new FrameClock(new FrameClock.Callback() {
+            @Override
+            public boolean onFrameDue(long frame) {
+                FrameScheduler.Lane handler = mHandler;
+                if (handler == null || mIsRenderPending) {
+                    return false;
+                }
+                mIsRenderPending = true;
+                mDueFrame = frame;
+                mDueNanos = System.nanoTime();
+                handler.post(mRenderDueFrame);
+                return true;
+            }
+        });
         if (!TextUtils.isEmpty(typedArrayPath)) {
             initAnimAssets(typedArrayPath);
         }
@@ -81,18 +229,283 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
         mAnimationListener = animationListener;
     }
 
+    /**
+     * 设置解码复用池，默认使用进程内共享的{@link BitmapPool#getInstance()}
+     *
+     * @param bitmapPool 复用池
+     */
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        mLoader.setBitmapPool(bitmapPool);
+    }
+
+    /**
+     * 当前使用的解码复用池，可通过命中次数确认复用情况
+     */
+    public BitmapPool getBitmapPool() {
+        return mLoader.getBitmapPool();
+    }
+
+    /**
+     * 设置已解码帧缓存，默认使用进程内共享的{@link FrameCache#getInstance()}，
+     * 多个控件播放同一序列时共用解码结果
+     *
+     * @param frameCache 帧缓存
+     */
+    public void setFrameCache(final FrameCache frameCache) {
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    // 预取的帧从旧缓存取得，需要先归还给旧缓存再切换
+                    releaseLastFrame();
+                    mPrefetcher.clear();
+                    mLoader.setFrameCache(frameCache);
+                }
+            }
+        });
+    }
+
+    public FrameCache getFrameCache() {
+        return mLoader.getFrameCache();
+    }
+
+    /**
+     * 设置磁盘帧缓存，保存按绘制区域缩放后的帧，再次启动时不需要解码，默认关闭。
+     * 预解码容器的帧本身不需要解码，{@link MemoryFrameSource}的帧标识不随内容变化，都不会写入磁盘缓存
+     *
+     * @param diskCache 磁盘缓存，一般使用{@link DiskFrameCache#getInstance(Context)}，null表示关闭
+     */
+    public void setDiskCache(DiskFrameCache diskCache) {
+        mLoader.setDiskCache(diskCache);
+    }
+
+    public DiskFrameCache getDiskCache() {
+        return mLoader.getDiskCache();
+    }
+
+    /**
+     * 设置预解码帧数，解码线程会提前解码当前帧之后的帧，0表示关闭预解码
+     *
+     * @param prefetchDepth 预解码帧数
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        mPrefetcher.setDepth(prefetchDepth);
+    }
+
+    public int getPrefetchDepth() {
+        return mPrefetcher.getDepth();
+    }
+
+    /**
+     * 设置是否按控件尺寸解码，开启后帧图片在解码时即缩小到绘制区域大小，不再以原图尺寸解码后由画布缩放
+     *
+     * @param downsample 是否按控件尺寸解码，默认开启
+     */
+    public void setDownsample(boolean downsample) {
+        if (mIsDownsample == downsample) {
+            return;
+        }
+        mIsDownsample = downsample;
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    updateTargetSize();
+                }
+            }
+        });
+    }
+
+    public boolean isDownsample() {
+        return mIsDownsample;
+    }
+
+    /**
+     * 设置播放计时方式，下次开始播放时生效
+     *
+     * @param clockMode {@link #CLOCK_MODE_VSYNC}或{@link #CLOCK_MODE_DELAYED}，默认{@link #CLOCK_MODE_VSYNC}
+     */
+    public void setClockMode(int clockMode) {
+        mClockMode = clockMode;
+    }
+
+    public int getClockMode() {
+        return mClockMode;
+    }
+
+    /**
+     * 设置是否只重绘变化区域，开启后每帧只锁定并重绘相对上一帧变化的区域，适合大部分像素不变的大尺寸动画。
+     * 变化区域在加载序列时于后台低优先级线程中逐像素比较相邻两帧计算一次并保存，计算完成前整帧重绘；
+     * 合图序列直接使用帧区域计算
+     *
+     * @param dirtyRegion 是否只重绘变化区域，默认关闭
+     */
+    public void setDirtyRegion(final boolean dirtyRegion) {
+        mIsDirtyRegion = dirtyRegion;
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    releaseLastFrame();
+                    if (dirtyRegion) {
+                        mLoader.analyze(getContext(), mLoader.getFrames(), false, false, true);
+                    }
+                }
+            }
+        });
+    }
+
+    public boolean isDirtyRegion() {
+        return mIsDirtyRegion;
+    }
+
+    /**
+     * 设置是否自动选择像素格式，开启后加载序列时检测一次所有帧：全部不透明的序列使用RGB_565，
+     * 单色遮罩使用ALPHA_8并按遮罩颜色着色绘制，内存和解码开销降为ARGB_8888的1/2到1/4。
+     * 检测在单独的线程中进行，结果会保存下来，应用更新前再次加载同一序列直接使用。
+     * RGB_565每个颜色通道精度较低，渐变较多的序列可能出现色带
+     *
+     * @param autoConfig 是否自动选择像素格式，默认关闭，下次设置动画资源时生效
+     */
+    public void setAutoConfig(boolean autoConfig) {
+        mIsAutoConfig = autoConfig;
+    }
+
+    public boolean isAutoConfig() {
+        return mIsAutoConfig;
+    }
+
+    /**
+     * 设置是否合并重复帧，开启后加载序列时按像素找出内容相同的帧：连续相同的帧合并为一帧，显示时长不变，
+     * 不连续的相同帧只解码和缓存一次。检测在单独的线程中进行，结果会保存下来，应用更新前再次加载同一序列直接使用。
+     * 合图和APNG不合并
+     *
+     * @param dedupe 是否合并重复帧，默认关闭，下次设置动画资源时生效
+     */
+    public void setDedupe(boolean dedupe) {
+        mIsDedupe = dedupe;
+    }
+
+    public boolean isDedupe() {
+        return mIsDedupe;
+    }
+
+    /**
+     * 设置是否为拖动进度优化，开启后{@link #drawProgress(float)}按当前帧前后两侧预解码，
+     * 来回拖动时相邻帧直接从预解码缓冲中取出，适合绑定SeekBar或滚动位置
+     *
+     * @param scrubbing 是否为拖动进度优化，默认关闭
+     */
+    public void setScrubbing(boolean scrubbing) {
+        mIsScrubbing = scrubbing;
+    }
+
+    public boolean isScrubbing() {
+        return mIsScrubbing;
+    }
+
+    /**
+     * 当前播放性能统计的快照，包括每帧解码、绘制耗时的直方图、调度延迟、丢帧数和缓存命中情况
+     */
+    public FrameMetrics.Snapshot getFrameMetrics() {
+        return mMetrics.snapshot(mFrameClock.getDroppedFrames(), mLoader.getFrameCache().getSize(),
+                mLoader.getBitmapPool().getSize());
+    }
+
+    /**
+     * 清空播放性能统计
+     */
+    public void resetFrameMetrics() {
+        mMetrics.reset();
+        mFrameClock.resetDroppedFrames();
+    }
+
+    /**
+     * 设置播放性能统计监听器，绘制过程中最多每隔interval毫秒在主线程通知一次累计的统计数据
+     *
+     * @param listener 监听器，null表示取消
+     * @param interval 最短通知间隔，毫秒
+     */
+    public void setOnFrameMetricsListener(FrameMetrics.OnFrameMetricsListener listener, long interval) {
+        mMetricsIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, interval));
+        mMetricsListener = listener;
+    }
+
+    /**
+     * {@link #CLOCK_MODE_VSYNC}模式下因错过绘制时间而跳过的帧数
+     */
+    public long getDroppedFrames() {
+        return mFrameClock.getDroppedFrames();
+    }
+
+    /**
+     * 设置共用的节拍，只在主线程调用
+     *
+     * @param ticker 节拍，null表示恢复单独计时
+     */
+    void setFrameTicker(FrameTicker ticker) {
+        mIsSharedClock = ticker != null;
+        mFrameClock.setTicker(ticker);
+    }
+
+    /**
+     * 暂停或恢复播放，暂停期间停止计时并丢弃预解码的帧，恢复后从暂停的帧继续，只在主线程调用
+     *
+     * @param suspended 是否暂停
+     */
+    void setSuspended(boolean suspended) {
+        if (mIsSuspended == suspended) {
+            return;
+        }
+        mIsSuspended = suspended;
+        if (!suspended) {
+            if (mIsRunning.get() && mIsInitialized) {
+                resumeDrawFrame();
+            }
+            return;
+        }
+        mFrameClock.stop();
+        mIsRenderPending = false;
+        FrameScheduler.Lane handler = mHandler;
+        if (handler == null) {
+            return;
+        }
+        handler.removeCallbacks(this);
+        handler.removeCallbacks(mRenderDueFrame);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    if (mIsSuspended) {
+                        mPrefetcher.clear();
+                    }
+                }
+            }
+        });
+    }
+
+    boolean isSuspended() {
+        return mIsSuspended;
+    }
+
     @Override
     protected void onDetachedFromWindow() {
-        synchronized (this) {
-            stop();
-            mAssetsPath.clear();
-            mArrayResIds.clear();
-        }
+        stop();
+        mLoader.setSource(null);
+        mPrefetcher.quit();
+        doCleanup(new Runnable() {
+            @Override
+            public void run() {
+                closeQuietly(mOwnedSource);
+                mOwnedSource = null;
+                releaseLastFrame();
+            }
+        });
         super.onDetachedFromWindow();
     }
 
     /**
-     * 设置Assets动画资源
+     * 设置Assets动画资源，文件夹中只有一个png文件时按APNG播放
      *
      * @param assetsFolderPath Assets资源文件夹路径
      */
@@ -105,30 +518,216 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
     }
 
     private void initAnimAssets(final String assetsFolderPath) {
+        FrameSnapshot preloaded = FramePreloader.take(assetsFolderPath);
+        if (preloaded != null) {
+            bindPreloaded(preloaded, true);
+            return;
+        }
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    FrameSource source = FrameLoader.openAssets(getAssetManager(), assetsFolderPath);
+                    synchronized (mRenderLock) {
+                        applyFrameSource(source);
+                        if (source instanceof Closeable) {
+                            mOwnedSource = (Closeable) source;
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "initAnimAssets: failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置预解码序列帧容器文件，帧像素直接从内存映射的文件复制，没有解码开销，
+     * 文件格式见anim_packer模块的RawFramePacker。Assets资源文件夹中包含.sqf文件时{@link #setAnimAssets(String)}会自动使用
+     *
+     * @param file 容器文件
+     */
+    public void setAnimRawFile(final File file) {
+        if (file == null || !file.isFile()) {
+            Log.w(TAG, "setAnimRawFile: The file is not found.");
+            return;
+        }
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    RawFrameContainer rawFrames = RawFrameContainer.open(file);
+                    synchronized (mRenderLock) {
+                        applyFrameSource(rawFrames);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "setAnimRawFile: failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置压缩包中的序列帧，直接从压缩包读取，不需要先解压，
+     * 帧图片不压缩存储（zip -0）时读取最快，详见{@link ZipFrameSource}
+     *
+     * @param file   压缩包
+     * @param folder 压缩包中的文件夹路径，""表示根目录
+     */
+    public void setAnimZipFile(final File file, final String folder) {
+        if (file == null || !file.isFile()) {
+            Log.w(TAG, "setAnimZipFile: The file is not found.");
+            return;
+        }
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ZipFrameSource source = ZipFrameSource.open(file, folder == null ? "" : folder);
+                    synchronized (mRenderLock) {
+                        applyFrameSource(source);
+                        mOwnedSource = source;
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "setAnimZipFile: failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置APNG文件，只读取当前需要的帧，详见{@link ApngFrameSource}
+     *
+     * @param file APNG文件
+     */
+    public void setAnimApngFile(final File file) {
+        if (file == null || !file.isFile()) {
+            Log.w(TAG, "setAnimApngFile: The file is not found.");
+            return;
+        }
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ApngFrameSource source = ApngFrameSource.open(file);
+                    synchronized (mRenderLock) {
+                        applyFrameSource(source);
+                        mOwnedSource = source;
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "setAnimApngFile: failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置自定义的序列帧来源，如网络下载的帧数据或磁盘上的帧文件
+     *
+     * @param source 序列帧来源
+     */
+    public void setFrameSource(final FrameSource source) {
+        if (source == null) {
+            Log.w(TAG, "setFrameSource: The source is null.");
+            return;
+        }
+        FrameSnapshot preloaded = FramePreloader.take(source);
+        if (preloaded != null) {
+            bindPreloaded(preloaded, false);
+            return;
+        }
         doBackground(new Runnable() {
             @Override
             public void run() {
+                synchronized (mRenderLock) {
+                    applyFrameSource(source);
+                }
+            }
+        });
+    }
+
+    public FrameSource getFrameSource() {
+        return mLoader.getSource();
+    }
+
+    /**
+     * 绑定{@link FramePreloader}预加载的序列，从第一帧开始播放，Surface已经可用时立即绘制已缓存的第一帧
+     *
+     * @param owned 来源是否由控件关闭
+     */
+    private void bindPreloaded(FrameSnapshot frames, final boolean owned) {
+        mBindingFrames = frames;
+        if (mIsInitialized) {
+            Rect frame = getHolder().getSurfaceFrame();
+            drawBindingFrame(frame.width(), frame.height());
+        }
+        final FrameSource source = FrameLoader.unwrap(frames.getSource());
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    mIndex = 0;
+                    applyFrameSource(source);
+                    if (owned && source instanceof Closeable) {
+                        mOwnedSource = (Closeable) source;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 在主线程从缓存绘制绑定序列的第一帧，没有缓存时等待绘制线程解码
+     *
+     * @param width  Surface宽
+     * @param height Surface高
+     */
+    private void drawBindingFrame(int width, int height) {
+        FrameSnapshot frames = mBindingFrames;
+        if (frames == null || width <= 0 || height <= 0) {
+            return;
+        }
+        Bitmap bitmap = mLoader.peek(frames, 0, mIsDownsample ? width : 0, mIsDownsample ? height : 0);
+        if (bitmap == null) {
+            return;
+        }
+        SurfaceHolder surfaceHolder = getHolder();
+        synchronized (mSurfaceLock) {
+            Canvas canvas = mIsInitialized ? surfaceHolder.lockCanvas() : null;
+            if (canvas != null) {
                 try {
-                    synchronized (SequenceFrameView.this) {
-                        String[] paths = getAssetManager().list(assetsFolderPath);
-                        if (paths == null) {
-                            Log.w(TAG, "initAnimAssets: paths is null.");
-                            return;
-                        }
-                        mAssetsPath.clear();
-                        mArrayResIds.clear();
-                        for (int index = 0; index < paths.length; index++) {
-                            mAssetsPath.put(index, assetsFolderPath + "/" + paths[index]);
-                        }
-                        if (mIsInitialized) {
-                            drawFrame(mIndex);
-                        }
+                    canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                    Drawable background = mBackgroundDrawable;
+                    if (background != null) {
+                        background.draw(canvas);
                     }
-                } catch (IOException e) {
-                    Log.e(TAG, "initAnimAssets: failed", e);
+                    Paint paint = getPaint(bitmap, frames.getFormat(), new Paint());
+                    drawFrameBitmap(canvas, bitmap, 0, frames.getAtlas(), new Rect(0, 0, width, height),
+                            new Rect(), new Rect(), paint);
+                } finally {
+                    surfaceHolder.unlockCanvasAndPost(canvas);
                 }
             }
-        });
+        }
+        mLoader.release(bitmap);
+    }
+
+    private void applyFrameSource(FrameSource source) {
+        FrameSnapshot binding = mBindingFrames;
+        if (binding != null && FrameLoader.unwrap(binding.getSource()) != source) {
+            mBindingFrames = null;
+        }
+        FrameSnapshot frames = mLoader.setSource(source);
+        closeQuietly(mOwnedSource);
+        mOwnedSource = null;
+        // 预解码容器的像素格式由文件决定，不需要检测
+        mLoader.analyze(getContext(), frames, mIsAutoConfig, mIsDedupe, mIsDirtyRegion);
+        mPlayingSource = mLoader.getSource();
+        mPrefetcher.clear();
+        releaseLastFrame();
+        if (mIsInitialized) {
+            drawFrame(mIndex);
+        }
     }
 
     private AssetManager getAssetManager() {
@@ -143,7 +742,6 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
      *
      * @param arrayRes 资源列表集合，一般在arrays.xml里边定义
      */
-    @SuppressLint("Recycle")
     public void setAnimResource(@ArrayRes int arrayRes) {
         if (arrayRes == 0) {
             Log.w(TAG, "setAnimResource: The integer-array resources is not found.");
@@ -156,17 +754,8 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
         doBackground(new Runnable() {
             @Override
             public void run() {
-                synchronized (SequenceFrameView.this) {
-                    mAssetsPath.clear();
-                    mArrayResIds.clear();
-                    TypedArray typedArray = getResources().obtainTypedArray(arrayRes);
-                    for (int index = 0; index < typedArray.length(); index++) {
-                        mArrayResIds.put(index, typedArray.getResourceId(index, 0));
-                    }
-                    typedArray.recycle();
-                    if (mIsInitialized) {
-                        drawFrame(mIndex);
-                    }
+                synchronized (mRenderLock) {
+                    applyFrameSource(ResourceFrameSource.fromArray(getResources(), arrayRes));
                 }
             }
         });
@@ -175,24 +764,34 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
     @Override
     public void surfaceCreated(SurfaceHolder holder) {
         Log.d(TAG, "surfaceCreated");
-        synchronized (this) {
-            drawRect.set(0, 0, getMeasuredWidth(), getMeasuredHeight());
-            drawBackground(holder);
-        }
+        final int width = getMeasuredWidth();
+        final int height = getMeasuredHeight();
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    drawRect.set(0, 0, width, height);
+                    drawBackground(getHolder());
+                }
+            }
+        });
     }
 
     private void drawBackground(SurfaceHolder holder) {
-        if (mBackgroundDrawable != null && holder != null) {
+        Drawable background = mBackgroundDrawable;
+        if (background != null && holder != null) {
             Log.d(TAG, "drawBackground");
-            Canvas canvas = holder.lockCanvas();
-            if (canvas != null) {
-                try {
-                    mBackgroundDrawable.setBounds(drawRect);
-                    mBackgroundDrawable.draw(canvas);
-                } catch (Exception e) {
-                    Log.e(TAG, "drawBackground: failed", e);
-                } finally {
-                    holder.unlockCanvasAndPost(canvas);
+            synchronized (mSurfaceLock) {
+                Canvas canvas = holder.lockCanvas();
+                if (canvas != null) {
+                    try {
+                        background.setBounds(drawRect);
+                        background.draw(canvas);
+                    } catch (Exception e) {
+                        Log.e(TAG, "drawBackground: failed", e);
+                    } finally {
+                        holder.unlockCanvasAndPost(canvas);
+                    }
                 }
             }
         }
@@ -200,46 +799,72 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
 
     @Override
     public void setBackgroundDrawable(Drawable background) {
-        synchronized (this) {
-            mBackgroundDrawable = background;
-            if (mIsInitialized) {
-                drawFrame(mIndex);
-            } else {
-                drawBackground(getHolder());
-            }
+        mBackgroundDrawable = background;
+        if (mLoader == null) {
+            // 父类构造方法中调用时控件还没有初始化
+            return;
         }
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    mLastDrawnIndex = -1;
+                    mLastFrameKey = null;
+                    if (mIsInitialized) {
+                        drawFrame(mIndex);
+                    } else {
+                        drawBackground(getHolder());
+                    }
+                }
+            }
+        });
     }
 
     @Override
-    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+    public void surfaceChanged(SurfaceHolder holder, int format, final int width, final int height) {
         Log.d(TAG, "surfaceChanged");
-        synchronized (this) {
-            drawRect.set(0, 0, width, height);
-            mBackgroundDrawable.setBounds(drawRect);
+        synchronized (mSurfaceLock) {
             mIsInitialized = true;
-            startHandlerThread();
-            if (mIsRunning) {
-                startDrawFrame();
-            } else {
-                if (mHandler != null) {
-                    mHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            drawFrame(mIndex);
-                        }
-                    });
+        }
+        drawBindingFrame(width, height);
+        startHandlerThread();
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    drawRect.set(0, 0, width, height);
+                    Drawable background = mBackgroundDrawable;
+                    if (background != null) {
+                        background.setBounds(drawRect);
+                    }
+                    updateTargetSize();
+                    releaseLastFrame();
+                    if (!mIsRunning.get()) {
+                        drawFrame(mIndex);
+                    }
                 }
             }
+        });
+        if (mIsRunning.get() && !mIsSuspended) {
+            startDrawFrame();
         }
     }
 
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
         Log.d(TAG, "surfaceDestroyed");
-        synchronized (this) {
+        // 等待正在进行的绘制结束，之后绘制线程不再访问Surface
+        synchronized (mSurfaceLock) {
             mIsInitialized = false;
-            stopHandlerThread();
         }
+        stopHandlerThread();
+        mPrefetcher.quit();
+        doCleanup(new Runnable() {
+            @Override
+            public void run() {
+                releaseLastFrame();
+            }
+        });
     }
 
     @Override
@@ -248,21 +873,18 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
             Log.w(TAG, "run: failed, This thread is died");
             return;
         }
-        synchronized (this) {
+        synchronized (mRenderLock) {
             doDrawing();
         }
     }
 
     @Override
     public void start() {
-        if (mIsRunning) {
+        if (!mIsRunning.compareAndSet(false, true)) {
             return;
         }
-        mIsRunning = true;
-        synchronized (this) {
-            if (mIsInitialized) {
-                startDrawFrame();
-            }
+        if (mIsInitialized && !mIsSuspended) {
+            startDrawFrame();
         }
     }
 
@@ -270,15 +892,30 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
      * 重新启动动画，动画从头开始播放
      */
     public void reStart() {
-        synchronized (this) {
-            mIndex = 0;
-        }
+        doBackground(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    mIndex = 0;
+                    if (mIsRunning.get() && mIsInitialized && !mIsSuspended
+                            && (mClockMode == CLOCK_MODE_VSYNC || mIsSharedClock)) {
+                        // 正在播放时start()直接返回，时钟会按原来的起点覆盖mIndex，需要从第0帧重新计时
+                        syncFrameSource();
+                        mClockStartIndex = 0;
+                        mFrameClock.start(mLoader.getClockDurations(0, mDuration));
+                    }
+                }
+            }
+        });
         if (mAnimationListener != null) {
             mAnimationListener.onAnimRepeat();
         }
         start();
     }
 
+    /**
+     * 通知开始播放，计时在绘制线程中按当前帧开始
+     */
     private void startDrawFrame() {
         if (mHandler == null) {
             Log.w(TAG, "start: failed, This thread is died");
@@ -287,40 +924,78 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
         if (mAnimationListener != null) {
             mAnimationListener.onAnimStart();
         }
-        mHandler.post(this);
+        resumeDrawFrame();
+    }
+
+    /**
+     * 从当前帧继续计时，不通知监听器
+     */
+    private void resumeDrawFrame() {
+        FrameScheduler.Lane handler = mHandler;
+        if (handler == null) {
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    if (!mIsRunning.get() || mIsSuspended) {
+                        return;
+                    }
+                    syncFrameSource();
+                    if (mClockMode == CLOCK_MODE_VSYNC || mIsSharedClock) {
+                        mClockStartIndex = mIndex;
+                        mFrameClock.start(mLoader.getClockDurations(mIndex, mDuration));
+                    } else {
+                        mNextDueNanos = System.nanoTime();
+                        SequenceFrameView.this.run();
+                    }
+                }
+            }
+        });
     }
 
     @Override
     public void stop() {
-        mIsRunning = false;
-        if (mHandler == null) {
+        mIsRunning.set(false);
+        mFrameClock.stop();
+        FrameScheduler.Lane handler = mHandler;
+        if (handler == null) {
             Log.w(TAG, "stop: The anim thread is died");
             return;
         }
-        mHandler.removeCallbacks(this);
+        handler.removeCallbacks(this);
+        handler.removeCallbacks(mRenderDueFrame);
+        mIsRenderPending = false;
         if (mAnimationListener != null) {
             mAnimationListener.onAnimEnd();
         }
-        refreshIndex();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRenderLock) {
+                    mNextDueNanos = 0;
+                    refreshIndex();
+                }
+            }
+        });
     }
 
     private void refreshIndex() {
-        synchronized (this) {
-            boolean isFinish = mIndex >= mAssetsPath.size() && mIndex >= mArrayResIds.size();
-            if (isFinish) {
-                mIndex = 0;
-            }
-            mIndex = Math.max(0, mIndex - 1);
+        boolean isFinish = mIndex >= getFrameCount();
+        if (isFinish) {
+            mIndex = 0;
         }
+        mIndex = Math.max(0, mIndex - 1);
     }
 
     /**
-     * 按整体进度绘制动画
+     * 按整体进度绘制动画，连续调用时只绘制最新的进度，尚未开始绘制的旧进度直接丢弃
      *
      * @param progress 动画进度 0.0 - 1.0
      */
     public void drawProgress(float progress) {
-        if (mIsRunning) {
+        if (mIsRunning.get()) {
             return;
         }
         float offset = progress;
@@ -330,20 +1005,13 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
         if (progress > 1) {
             offset = 1.0f;
         }
-        synchronized (this) {
-            if (mArrayResIds.size() > 0) {
-                mIndex = Math.round((mArrayResIds.size() - 1) * offset);
-            } else if (mAssetsPath.size() > 0) {
-                mIndex = Math.round((mAssetsPath.size() - 1) * offset);
-            }
-            if (mHandler != null) {
-                mHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        drawFrame(mIndex);
-                    }
-                });
-            }
+        mProgress = offset;
+        if (!mIsProgressPending.compareAndSet(false, true)) {
+            return;
+        }
+        FrameScheduler.Lane handler = mHandler;
+        if (handler == null || !handler.post(mDrawProgress)) {
+            mIsProgressPending.set(false);
         }
     }
 
@@ -353,58 +1021,175 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
      * @param index 帧下标
      */
     private void drawFrame(int index) {
-        drawBitmap(mArrayResIds.size() > 0 ? getBitmap(mArrayResIds.get(index, 0)) : getBitmap(mAssetsPath.get(index)));
+        Bitmap bitmap = mPrefetcher.take(index);
+        // 先更新预解码范围，不再需要的帧停止解码，相邻帧与当前帧同时解码
+        if (mIsScrubbing && !mIsRunning.get()) {
+            mPrefetcher.prefetchAround(index, getFrameCount(), mIsLoop);
+        } else {
+            mPrefetcher.prefetch(index, mDirection, getFrameCount(), mIsLoop);
+        }
+        String frameKey = getFrameKey(mLoader.getFrames(), index);
+        if (frameKey != null && frameKey.equals(mLastFrameKey)) {
+            // 画面与上次绘制的相同，下一帧按这一帧计算变化区域
+            mFrameDueNanos = 0;
+            mLastDrawnIndex = index;
+            mLoader.release(bitmap);
+            return;
+        }
+        if (bitmap == null) {
+            bitmap = mLoader.decode(index);
+        } else {
+            mMetrics.recordPrefetchHit();
+        }
+        drawBitmap(bitmap, index);
+    }
+
+    /**
+     * 绘制区域变化后更新解码尺寸，已预解码的帧按旧尺寸解码，需要丢弃
+     */
+    private void updateTargetSize() {
+        int width = mIsDownsample ? drawRect.width() : 0;
+        int height = mIsDownsample ? drawRect.height() : 0;
+        if (mLoader.setTargetSize(width, height)) {
+            mPrefetcher.clear();
+        }
+    }
+
+    private int getFrameCount() {
+        return mLoader.getFrameCount();
+    }
+
+    /**
+     * 帧内容的标识，合图的帧共用一张图，没有单独的标识
+     */
+    private static String getFrameKey(FrameSnapshot frames, int index) {
+        FrameSource source = frames.getSource();
+        if (source == null || frames.getAtlas() != null || index < 0 || index >= source.getFrameCount()) {
+            return null;
+        }
+        return source.getFrameKey(index);
+    }
+
+    /**
+     * 进度对应的帧，合并了重复帧时按合并前的帧计算，保持进度与时间对应
+     */
+    private int getProgressIndex(float progress) {
+        FrameSource source = mLoader.getSource();
+        if (source instanceof DedupedFrameSource) {
+            DedupedFrameSource deduped = (DedupedFrameSource) source;
+            return deduped.getFrameAt(Math.round((deduped.getSourceFrameCount() - 1) * progress));
+        }
+        return Math.round((getFrameCount() - 1) * progress);
+    }
+
+    /**
+     * 后台合并重复帧完成后序列会被替换，当前帧换算为合并后的下标继续播放，需要持有mRenderLock
+     *
+     * @return 序列被替换时返回true
+     */
+    private boolean syncFrameSource() {
+        FrameSource source = mLoader.getSource();
+        if (source == mPlayingSource) {
+            return false;
+        }
+        if (source instanceof DedupedFrameSource && ((DedupedFrameSource) source).getSource() == mPlayingSource) {
+            mIndex = ((DedupedFrameSource) source).getFrameAt(mIndex);
+        }
+        mPlayingSource = source;
+        mPrefetcher.clear();
+        releaseLastFrame();
+        return true;
+    }
+
+    /**
+     * 帧的显示时长，来源没有指定时使用控件设置的时长
+     *
+     * @return 毫秒
+     */
+    private long getFrameDuration(int index) {
+        return mLoader.getFrameDuration(index, mDuration);
     }
 
     @Override
     public boolean isRunning() {
-        return mIsRunning;
+        return mIsRunning.get();
     }
 
+    /**
+     * 绘制任务在共享线程池中串行执行，不再为每个控件单独创建线程
+     */
     private void startHandlerThread() {
-        if (mHandlerThread != null && mHandlerThread.isAlive()) {
+        if (mHandler != null && !mHandler.isQuit()) {
             return;
         }
-        mHandlerThread = new HandlerThread(TAG);
-        mHandlerThread.start();
-        Looper looper = mHandlerThread.getLooper();
-        if (looper != null) {
-            mHandler = new Handler(looper);
-        }
+        mHandler = FrameScheduler.getInstance().newLane();
     }
 
     private void stopHandlerThread() {
+        mFrameClock.stop();
+        mIsRenderPending = false;
         if (mHandler == null) {
             Log.w(TAG, "stopHandlerThread: The anim thread is died");
             return;
         }
-        mHandlerThread.quit();
+        mHandler.quit();
         mHandler = null;
         if (mAnimationListener != null) {
             mAnimationListener.onAnimEnd();
         }
     }
 
+    /**
+     * 在单独的队列中执行清理，绘制队列已经退出或即将退出时使用，任务与绘制任务互斥
+     */
+    private void doCleanup(final Runnable runnable) {
+        final FrameScheduler.Lane lane = FrameScheduler.getInstance().newLane();
+        lane.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronized (mRenderLock) {
+                        runnable.run();
+                    }
+                } finally {
+                    lane.quit();
+                }
+            }
+        });
+    }
+
     private void doBackground(Runnable runnable) {
         if (runnable == null) {
             Log.w(TAG, "doBackground failed: runnable is null");
             return;
         }
         startHandlerThread();
-        if (mHandler == null) {
+        FrameScheduler.Lane handler = mHandler;
+        if (handler == null) {
             Log.w(TAG, "doBackground failed: The anim thread is died");
             return;
         }
-        mHandler.post(runnable);
+        handler.post(runnable);
     }
 
     private void doDrawing() {
-        boolean isFinish = mIndex >= mAssetsPath.size() && mIndex >= mArrayResIds.size();
+        if (mIsSuspended) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (mNextDueNanos != 0) {
+            mMetrics.recordLateness(now - mNextDueNanos);
+        }
+        mFrameDueNanos = mNextDueNanos != 0 ? mNextDueNanos : now;
+        syncFrameSource();
+        boolean isFinish = mIndex >= getFrameCount();
         if (isFinish) {
             if (mIsLoop) {
                 mIndex = 0;
             } else {
-                mIsRunning = false;
+                if (!mIsRunning.compareAndSet(true, false)) {
+                    return;
+                }
                 post(new Runnable() {
                     @Override
                     public void run() {
@@ -416,54 +1201,252 @@ public class SequenceFrameView extends SurfaceView implements SurfaceHolder.Call
                 return;
             }
         }
-        if (mHandler == null) {
+        FrameScheduler.Lane handler = mHandler;
+        if (handler == null) {
             Log.w(TAG, "doDrawing: The anim thread is died");
             return;
         }
-        mHandler.postDelayed(this, mDuration);
+        long duration = getFrameDuration(mIndex);
+        handler.postDelayed(this, duration);
+        mNextDueNanos = now + TimeUnit.MILLISECONDS.toNanos(duration);
+        mDirection = 1;
         drawFrame(mIndex);
         mIndex++;
     }
 
-    private void drawBitmap(Bitmap bitmap) {
-        synchronized (this) {
-            if (!mIsInitialized) {
-                return;
-            }
-            SurfaceHolder surfaceHolder = getHolder();
-            if (surfaceHolder == null || bitmap == null) {
+    /**
+     * {@link #CLOCK_MODE_VSYNC}模式下绘制时钟计算出的帧
+     *
+     * @param index 从头算起的帧下标，循环播放时可能超出总帧数
+     */
+    private void drawDueFrame(long index) {
+        if (!mIsRunning.get() || mIsSuspended) {
+            return;
+        }
+        FrameSource playing = mPlayingSource;
+        int playingCount = playing == null ? 0 : playing.getFrameCount();
+        if (mLoader.getSource() != playing && playingCount > 0 && (index < playingCount || mIsLoop)) {
+            // 时钟按替换前的帧时长计时，换算到新序列的帧后重新开始计时
+            mIndex = (int) (index % playingCount);
+            syncFrameSource();
+            mClockStartIndex = mIndex;
+            mFrameClock.start(mLoader.getClockDurations(mIndex, mDuration));
+            return;
+        }
+        syncFrameSource();
+        int frameCount = getFrameCount();
+        if (frameCount == 0) {
+            return;
+        }
+        if (index >= frameCount) {
+            if (mIsLoop) {
+                index %= frameCount;
+            } else {
+                if (!mIsRunning.compareAndSet(true, false)) {
+                    return;
+                }
+                mFrameClock.stop();
+                mIndex = frameCount;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mAnimationListener != null) {
+                            mAnimationListener.onAnimEnd();
+                        }
+                    }
+                });
                 return;
             }
-            Canvas canvas = surfaceHolder.lockCanvas();
-            if (canvas != null) {
-                try {
-                    canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
-                    mBackgroundDrawable.draw(canvas);
-                    if (!bitmap.isRecycled()) {
-                        canvas.drawBitmap(bitmap, null, drawRect, null);
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "drawBitmap: failed", e);
-                } finally {
-                    surfaceHolder.unlockCanvasAndPost(canvas);
-                    bitmap.recycle();
-                }
+        }
+        mIndex = (int) index;
+        mDirection = 1;
+        drawFrame(mIndex);
+        mIndex++;
+    }
+
+    private void drawBitmap(Bitmap bitmap, int index) {
+        long dueNanos = mFrameDueNanos;
+        mFrameDueNanos = 0;
+        FrameSnapshot frames = mLoader.getFrames();
+        if (bitmap == null && !frames.isEmptyFrame(index)) {
+            return;
+        }
+        SurfaceHolder surfaceHolder = getHolder();
+        if (!mIsInitialized || surfaceHolder == null) {
+            mLoader.release(bitmap);
+            return;
+        }
+        boolean isDirtyRegion = mIsDirtyRegion;
+        Rect dirty = isDirtyRegion ? getDirtyRect(index, frames) : null;
+        if (dirty != null && dirty.isEmpty()) {
+            mLastDrawnIndex = index;
+            mLoader.release(bitmap);
+            return;
+        }
+        boolean isDrawn = false;
+        synchronized (mSurfaceLock) {
+            if (mIsInitialized) {
+                isDrawn = drawCanvas(surfaceHolder, dirty, bitmap, index, frames, dueNanos);
             }
         }
+        mLastFrameKey = isDrawn ? getFrameKey(frames, index) : null;
+        FrameSnapshot binding = mBindingFrames;
+        if (isDrawn && binding != null
+                && FrameLoader.unwrap(binding.getSource()) == FrameLoader.unwrap(frames.getSource())) {
+            // 绘制线程已经绘制了绑定的序列
+            mBindingFrames = null;
+        }
+        mLastDrawnIndex = isDirtyRegion && isDrawn ? index : -1;
+        mLoader.release(bitmap);
     }
 
-    private Bitmap getBitmap(String assetsPath) {
-        Bitmap bitmap = null;
+    /**
+     * 锁定画布绘制一帧，需要持有mSurfaceLock
+     *
+     * @return 画布锁定失败时返回false
+     */
+    private boolean drawCanvas(SurfaceHolder surfaceHolder, Rect dirty, Bitmap bitmap, int index,
+                               FrameSnapshot frames, long dueNanos) {
+        long lockStart = System.nanoTime();
+        Canvas canvas = dirty != null ? surfaceHolder.lockCanvas(dirty) : surfaceHolder.lockCanvas();
+        if (canvas == null) {
+            mMetrics.recordDrawFailure();
+            return false;
+        }
+        long drawStart = System.nanoTime();
+        long postStart = drawStart;
         try {
-            bitmap = BitmapFactory.decodeStream(getAssetManager().open(assetsPath));
-        } catch (IOException e) {
-            Log.e(TAG, "getBitmap: failed", e);
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            Drawable background = mBackgroundDrawable;
+            if (background != null) {
+                background.draw(canvas);
+            }
+            if (bitmap != null && !bitmap.isRecycled()) {
+                Paint paint = getPaint(bitmap, frames.getFormat(), mTintPaint);
+                drawFrameBitmap(canvas, bitmap, index, frames.getAtlas(), drawRect, mSrcRect, mDstRect, paint);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "drawBitmap: failed", e);
+            mMetrics.recordDrawFailure();
+        } finally {
+            postStart = System.nanoTime();
+            surfaceHolder.unlockCanvasAndPost(canvas);
+        }
+        long end = System.nanoTime();
+        boolean isJank = dueNanos != 0 && end - dueNanos > TimeUnit.MILLISECONDS.toNanos(getFrameDuration(index));
+        mMetrics.recordFrame(drawStart - lockStart, postStart - drawStart, end - postStart, isJank);
+        reportFrameMetrics();
+        return true;
+    }
+
+    /**
+     * 距上次通知超过设置的间隔时在主线程通知统计数据
+     */
+    private void reportFrameMetrics() {
+        final FrameMetrics.OnFrameMetricsListener listener = mMetricsListener;
+        if (listener == null || !mMetrics.shouldReport(System.nanoTime(), mMetricsIntervalNanos)) {
+            return;
+        }
+        final FrameMetrics.Snapshot snapshot = getFrameMetrics();
+        post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFrameMetrics(snapshot);
+            }
+        });
+    }
+
+    /**
+     * 合图帧只绘制自身区域，其他帧缩放到整个绘制区域
+     */
+    private static void drawFrameBitmap(Canvas canvas, Bitmap bitmap, int index, FrameAtlas atlas, Rect bounds,
+                                        Rect srcRect, Rect dstRect, Paint paint) {
+        if (atlas != null && index < atlas.getFrameCount()) {
+            atlas.getSourceRect(index, bitmap, srcRect);
+            atlas.getDestRect(index, bounds, dstRect);
+            canvas.drawBitmap(bitmap, srcRect, dstRect, paint);
+        } else {
+            canvas.drawBitmap(bitmap, null, bounds, paint);
+        }
+    }
+
+    /**
+     * ALPHA_8格式的帧只有透明度，按检测出的遮罩颜色绘制
+     *
+     * @param tintPaint 着色使用的画笔
+     */
+    private static Paint getPaint(Bitmap bitmap, FrameFormat format, Paint tintPaint) {
+        if (bitmap.getConfig() != Bitmap.Config.ALPHA_8) {
+            return null;
+        }
+        tintPaint.setColor(format.getTintColor());
+        return tintPaint;
+    }
+
+    /**
+     * 计算从上次绘制的帧切换到当前帧需要重绘的区域，绘制线程不比较像素，
+     * 使用加载时分析出的变化区域，尚未分析完成时整帧重绘
+     *
+     * @return 需要整帧重绘时返回null，画面没有变化时返回空区域
+     */
+    private Rect getDirtyRect(int index, FrameSnapshot frames) {
+        if (mLastDrawnIndex < 0) {
+            return null;
         }
-        return bitmap;
+        if (index == mLastDrawnIndex) {
+            mDirtyRect.setEmpty();
+            return mDirtyRect;
+        }
+        int frameCount = frames.getFrameCount();
+        if (mDirtyRegions.getFrameCount() != frameCount) {
+            mDirtyRegions.reset(frameCount);
+        }
+        if (mDirtyRegions.get(index) == null) {
+            FrameAtlas atlas = frames.getAtlas();
+            FrameDiffs diffs = frames.getDiffs();
+            if (atlas != null && atlas.getFrameCount() == frameCount) {
+                computeAtlasDirtyRegions(atlas, frameCount);
+            } else if (diffs != null) {
+                mDirtyRegions.map(diffs, frames.getSource(), drawRect);
+            }
+        }
+        return mDirtyRegions.union(mLastDrawnIndex, index, mDirtyRect) ? mDirtyRect : null;
+    }
+
+    /**
+     * 合图帧只在自身区域内有内容，相邻两帧区域的并集即为变化区域
+     */
+    private void computeAtlasDirtyRegions(FrameAtlas atlas, int frameCount) {
+        for (int index = 0; index < frameCount; index++) {
+            Rect rect = new Rect();
+            atlas.getDestRect((index + frameCount - 1) % frameCount, drawRect, rect);
+            atlas.getDestRect(index, drawRect, mDstRect);
+            rect.union(mDstRect);
+            if (!rect.intersect(drawRect)) {
+                rect.setEmpty();
+            }
+            mDirtyRegions.put(index, rect);
+        }
+    }
+
+    /**
+     * 下一帧整帧重绘，帧资源或绘制区域变化后变化区域需要重新映射
+     */
+    private void releaseLastFrame() {
+        mLastDrawnIndex = -1;
+        mLastFrameKey = null;
+        mProgressIndex = -1;
+        mDirtyRegions.reset(0);
     }
 
-    private Bitmap getBitmap(int resId) {
-        return BitmapFactory.decodeResource(getResources(), resId);
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.w(TAG, "closeQuietly: failed", e);
+            }
+        }
     }
 
     /**
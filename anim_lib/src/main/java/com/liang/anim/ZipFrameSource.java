@@ -0,0 +1,351 @@
+package com.liang.anim;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 压缩包中的序列帧，不需要先解压到磁盘。打开时只读取一次中央目录建立索引，
+ * 不压缩存储（stored）的帧通过FileChannel按偏移直接读取，deflate压缩的帧读取时解压。
+ * 每个条目只读取一次到线程复用的缓冲区，取尺寸和解码都使用这份数据。
+ * 不支持zip64和加密条目
+ */
+public class ZipFrameSource extends EncodedFrameSource implements Closeable {
+    private static final String TAG = "ZipFrameSource";
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final String[] IMAGE_SUFFIXES = {".png", ".jpg", ".jpeg", ".webp"};
+    /**
+     * 每个解码线程复用的条目数据，解码一帧时取尺寸和解码两次调用都使用同一份
+     */
+    private static final ThreadLocal<EntryBuffer> sBuffers = new ThreadLocal<EntryBuffer>() {
+        @Override
+        protected EntryBuffer initialValue() {
+            return new EntryBuffer();
+        }
+    };
+
+    private final String mName;
+    private final String mKeyPrefix;
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final Entry[] mEntries;
+
+    private ZipFrameSource(File file, String folder, RandomAccessFile randomAccessFile, List<Entry> entries) {
+        // 压缩包被替换后不再使用旧的缓存和检测结果
+        mName = "zip:" + file.getAbsolutePath() + "@" + file.lastModified() + "/" + file.length() + "!" + folder;
+        mKeyPrefix = "zip:" + file.getAbsolutePath() + "@" + file.lastModified() + "!";
+        mFile = randomAccessFile;
+        mChannel = randomAccessFile.getChannel();
+        mEntries = entries.toArray(new Entry[entries.size()]);
+    }
+
+    /**
+     * 按压缩包根目录中的图片创建
+     *
+     * @param file 压缩包
+     */
+    public static ZipFrameSource open(File file) throws IOException {
+        return open(file, "");
+    }
+
+    /**
+     * 按压缩包中某个文件夹内的图片创建，按文件名自然顺序播放，不包含子文件夹
+     *
+     * @param file   压缩包
+     * @param folder 压缩包中的文件夹路径，""表示根目录
+     */
+    public static ZipFrameSource open(File file, String folder) throws IOException {
+        String prefix = folder.isEmpty() || folder.endsWith("/") ? folder : folder + "/";
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            List<Entry> entries = readCentralDirectory(randomAccessFile.getChannel(), prefix);
+            Collections.sort(entries, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry o1, Entry o2) {
+                    return NaturalOrder.getInstance().compare(o1.mName, o2.mName);
+                }
+            });
+            return new ZipFrameSource(file, prefix, randomAccessFile, entries);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 从文件末尾找到目录结束记录，再一次读入整个中央目录
+     */
+    private static List<Entry> readCentralDirectory(FileChannel channel, String prefix) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < END_SIZE) {
+            throw new IOException("not a zip file");
+        }
+        int tailSize = (int) Math.min(fileSize, END_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new IOException("end of central directory not found");
+        }
+        int entryCount = tail.getShort(end + 10) & 0xffff;
+        long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+        long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+        if (entryCount == 0xffff || directorySize == 0xffffffffL || directoryOffset == 0xffffffffL) {
+            throw new IOException("zip64 is not supported");
+        }
+        if (directoryOffset + directorySize > fileSize) {
+            throw new IOException("corrupted central directory");
+        }
+        ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+        Charset charset = Charset.forName("UTF-8");
+        List<Entry> entries = new ArrayList<>();
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (position + CENTRAL_HEADER_SIZE > directorySize || directory.getInt(position) != CENTRAL_SIGNATURE) {
+                throw new IOException("corrupted central directory");
+            }
+            int flags = directory.getShort(position + 8) & 0xffff;
+            int method = directory.getShort(position + 10) & 0xffff;
+            long compressedSize = directory.getInt(position + 20) & 0xffffffffL;
+            long size = directory.getInt(position + 24) & 0xffffffffL;
+            int nameLength = directory.getShort(position + 28) & 0xffff;
+            int extraLength = directory.getShort(position + 30) & 0xffff;
+            int commentLength = directory.getShort(position + 32) & 0xffff;
+            long headerOffset = directory.getInt(position + 42) & 0xffffffffL;
+            byte[] nameBytes = new byte[nameLength];
+            directory.position(position + CENTRAL_HEADER_SIZE);
+            directory.get(nameBytes);
+            String name = new String(nameBytes, charset);
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            if (!name.startsWith(prefix) || name.indexOf('/', prefix.length()) >= 0 || !isImage(name)) {
+                continue;
+            }
+            if ((flags & FLAG_ENCRYPTED) != 0 || (method != METHOD_STORED && method != METHOD_DEFLATED)) {
+                Log.w(TAG, "readCentralDirectory: skip unsupported entry " + name);
+                continue;
+            }
+            if (compressedSize > Integer.MAX_VALUE || size > Integer.MAX_VALUE) {
+                throw new IOException("zip64 is not supported");
+            }
+            entries.add(new Entry(name, method, (int) compressedSize, (int) size, headerOffset));
+        }
+        return entries;
+    }
+
+    private static boolean isImage(String name) {
+        String lowerCase = name.toLowerCase(Locale.US);
+        for (String suffix : IMAGE_SUFFIXES) {
+            if (lowerCase.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按偏移读取，不改变FileChannel的位置，多个线程可以同时调用
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public int getFrameCount() {
+        return mEntries.length;
+    }
+
+    @Override
+    public String getFrameKey(int index) {
+        return mKeyPrefix + mEntries[index].mName;
+    }
+
+    @Override
+    protected Bitmap decodeFrame(int index, BitmapFactory.Options options) {
+        Entry entry = mEntries[index];
+        EntryBuffer buffer = sBuffers.get();
+        if (buffer.mEntry != entry) {
+            buffer.mEntry = null;
+            try {
+                readEntry(entry, buffer);
+            } catch (IOException e) {
+                Log.e(TAG, "decodeFrame: read " + entry.mName + " failed", e);
+                return null;
+            }
+            buffer.mEntry = entry;
+        }
+        return BitmapFactory.decodeByteArray(buffer.mData, 0, entry.mSize, options);
+    }
+
+    /**
+     * 把条目的图片数据读入缓冲区，deflate压缩的条目同时解压，缓冲区不够大时才重新分配
+     */
+    private void readEntry(Entry entry, EntryBuffer buffer) throws IOException {
+        long dataOffset = getDataOffset(entry);
+        if (buffer.mData == null || buffer.mData.length < entry.mSize) {
+            buffer.mData = new byte[entry.mSize];
+        }
+        byte[] data = buffer.mData;
+        if (entry.mMethod == METHOD_STORED) {
+            ByteBuffer target = ByteBuffer.wrap(data, 0, entry.mSize);
+            while (target.hasRemaining()) {
+                if (mChannel.read(target, dataOffset + target.position()) < 0) {
+                    throw new IOException("unexpected end of file");
+                }
+            }
+            return;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            InputStream inputStream = new InflaterInputStream(
+                    new ChannelInputStream(mChannel, dataOffset, entry.mCompressedSize), inflater);
+            int length = 0;
+            while (length < entry.mSize) {
+                int count = inputStream.read(data, length, entry.mSize - length);
+                if (count < 0) {
+                    throw new IOException("corrupted entry " + entry.mName);
+                }
+                length += count;
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 本地文件头中的扩展字段长度可能与中央目录不同，第一次读取条目时解析并记录数据偏移
+     */
+    private long getDataOffset(Entry entry) throws IOException {
+        long dataOffset = entry.mDataOffset;
+        if (dataOffset >= 0) {
+            return dataOffset;
+        }
+        ByteBuffer header = read(mChannel, entry.mHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_SIGNATURE) {
+            throw new IOException("corrupted local header of " + entry.mName);
+        }
+        int nameLength = header.getShort(26) & 0xffff;
+        int extraLength = header.getShort(28) & 0xffff;
+        dataOffset = entry.mHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+        if (dataOffset + entry.mCompressedSize > mChannel.size()) {
+            throw new IOException("corrupted entry " + entry.mName);
+        }
+        entry.mDataOffset = dataOffset;
+        return dataOffset;
+    }
+
+    /**
+     * 关闭压缩包，之后不能再解码
+     */
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    private static final class Entry {
+        private final String mName;
+        private final int mMethod;
+        private final int mCompressedSize;
+        private final int mSize;
+        private final long mHeaderOffset;
+        private volatile long mDataOffset = -1;
+
+        private Entry(String name, int method, int compressedSize, int size, long headerOffset) {
+            mName = name;
+            mMethod = method;
+            mCompressedSize = compressedSize;
+            mSize = size;
+            mHeaderOffset = headerOffset;
+        }
+    }
+
+    /**
+     * 线程最近读取的条目和数据，缓冲区可能比条目大
+     */
+    private static final class EntryBuffer {
+        private Entry mEntry;
+        private byte[] mData;
+    }
+
+    /**
+     * 按偏移读取压缩包中一段数据的输入流
+     */
+    private static final class ChannelInputStream extends InputStream {
+        private final FileChannel mChannel;
+        private long mPosition;
+        private long mRemaining;
+
+        private ChannelInputStream(FileChannel channel, long position, long length) {
+            mChannel = channel;
+            mPosition = position;
+            mRemaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int count = mChannel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, mRemaining)), mPosition);
+            if (count < 0) {
+                throw new IOException("unexpected end of file");
+            }
+            mPosition += count;
+            mRemaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(mRemaining, Integer.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.liang.anim;
+
+import java.util.Comparator;
+
+/**
+ * 按文件名中的数字自然排序，frame_2排在frame_10之前，数字前面的0不影响顺序。
+ * 不依赖Android，打包工具anim_packer共用同一份源码，保证打包和播放的帧顺序一致
+ */
+public final class NaturalOrder implements Comparator<String> {
+    private static final NaturalOrder sInstance = new NaturalOrder();
+
+    private NaturalOrder() {
+    }
+
+    public static NaturalOrder getInstance() {
+        return sInstance;
+    }
+
+    @Override
+    public int compare(String left, String right) {
+        int i = 0;
+        int j = 0;
+        while (i < left.length() && j < right.length()) {
+            char a = left.charAt(i);
+            char b = right.charAt(j);
+            if (Character.isDigit(a) && Character.isDigit(b)) {
+                int startA = i;
+                int startB = j;
+                while (i < left.length() && Character.isDigit(left.charAt(i))) {
+                    i++;
+                }
+                while (j < right.length() && Character.isDigit(right.charAt(j))) {
+                    j++;
+                }
+                String numberA = stripLeadingZeros(left.substring(startA, i));
+                String numberB = stripLeadingZeros(right.substring(startB, j));
+                if (numberA.length() != numberB.length()) {
+                    return numberA.length() - numberB.length();
+                }
+                int result = numberA.compareTo(numberB);
+                if (result != 0) {
+                    return result;
+                }
+            } else {
+                if (a != b) {
+                    return a - b;
+                }
+                i++;
+                j++;
+            }
+        }
+        return (left.length() - i) - (right.length() - j);
+    }
+
+    private static String stripLeadingZeros(String number) {
+        int index = 0;
+        while (index < number.length() - 1 && number.charAt(index) == '0') {
+            index++;
+        }
+        return number.substring(index);
+    }
+}
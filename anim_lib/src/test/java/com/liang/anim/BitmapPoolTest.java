@@ -0,0 +1,120 @@
+package com.liang.anim;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BitmapPoolTest {
+    private static final int SIZE = 10;
+
+    @Test
+    public void evictsLeastRecentlyPut() {
+        Bitmap a = newBitmap(SIZE);
+        Bitmap b = newBitmap(SIZE);
+        Bitmap c = newBitmap(SIZE);
+        Bitmap d = newBitmap(SIZE);
+        int byteSize = BitmapPool.getBitmapByteSize(a);
+        BitmapPool pool = new BitmapPool(byteSize * 3);
+        pool.put(a);
+        pool.put(b);
+        pool.put(c);
+        assertEquals(byteSize * 3, pool.getSize());
+        assertEquals(0, pool.getEvictionCount());
+
+        pool.put(d);
+        assertTrue(a.isRecycled());
+        assertFalse(b.isRecycled());
+        assertFalse(d.isRecycled());
+        assertEquals(1, pool.getEvictionCount());
+        assertEquals(byteSize * 3, pool.getSize());
+    }
+
+    @Test
+    public void putAgainMovesToNewest() {
+        Bitmap a = newBitmap(SIZE);
+        Bitmap b = newBitmap(SIZE);
+        int byteSize = BitmapPool.getBitmapByteSize(a);
+        BitmapPool pool = new BitmapPool(byteSize * 2);
+        pool.put(a);
+        pool.put(b);
+        assertSame(a, pool.get(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        pool.put(a);
+
+        pool.trimToSize(byteSize);
+        assertTrue(b.isRecycled());
+        assertFalse(a.isRecycled());
+        assertEquals(byteSize, pool.getSize());
+        assertEquals(1, pool.getEvictionCount());
+    }
+
+    @Test
+    public void ignoresBitmapAlreadyInPool() {
+        Bitmap a = newBitmap(SIZE);
+        int byteSize = BitmapPool.getBitmapByteSize(a);
+        BitmapPool pool = new BitmapPool(byteSize * 2);
+        pool.put(a);
+        pool.put(a);
+        assertEquals(byteSize, pool.getSize());
+    }
+
+    @Test
+    public void getCountsHitsAndMisses() {
+        Bitmap a = newBitmap(SIZE);
+        BitmapPool pool = new BitmapPool(BitmapPool.getBitmapByteSize(a) * 2);
+        pool.put(a);
+        assertSame(a, pool.get(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        assertEquals(0, pool.getSize());
+        assertNull(pool.get(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+    }
+
+    @Test
+    public void getReusesLargerBitmapWithinLimit() {
+        Bitmap large = newBitmap(SIZE * 2);
+        BitmapPool pool = new BitmapPool(BitmapPool.getBitmapByteSize(large) * 2);
+        pool.put(large);
+        // 大于4倍的Bitmap不复用，避免小图长期占用大内存
+        assertNull(pool.get(SIZE / 2, SIZE / 2, Bitmap.Config.ARGB_8888));
+        assertSame(large, pool.get(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void recyclesBitmapLargerThanPool() {
+        Bitmap large = newBitmap(SIZE * 2);
+        BitmapPool pool = new BitmapPool(BitmapPool.getBitmapByteSize(large) - 1);
+        pool.put(large);
+        assertTrue(large.isRecycled());
+        assertEquals(0, pool.getSize());
+        assertEquals(0, pool.getEvictionCount());
+    }
+
+    @Test
+    public void clearRecyclesAll() {
+        Bitmap a = newBitmap(SIZE);
+        Bitmap b = newBitmap(SIZE);
+        BitmapPool pool = new BitmapPool(BitmapPool.getBitmapByteSize(a) * 2);
+        pool.put(a);
+        pool.put(b);
+        pool.clear();
+        assertTrue(a.isRecycled());
+        assertTrue(b.isRecycled());
+        assertEquals(0, pool.getSize());
+        assertEquals(2, pool.getEvictionCount());
+    }
+
+    private static Bitmap newBitmap(int size) {
+        return Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    }
+}
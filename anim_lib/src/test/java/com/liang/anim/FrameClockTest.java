@@ -0,0 +1,59 @@
+package com.liang.anim;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameClockTest {
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void uniformDuration() {
+        long[] frameEnds = {40 * MILLIS};
+        long cycle = 40 * MILLIS;
+        assertEquals(0, FrameClock.getFrameAt(0, frameEnds, cycle));
+        assertEquals(0, FrameClock.getFrameAt(40 * MILLIS - 1, frameEnds, cycle));
+        assertEquals(1, FrameClock.getFrameAt(40 * MILLIS, frameEnds, cycle));
+        assertEquals(25, FrameClock.getFrameAt(1000 * MILLIS, frameEnds, cycle));
+        assertEquals(1000 * MILLIS, FrameClock.getFrameStart(25, frameEnds, cycle));
+    }
+
+    @Test
+    public void varyingDurations() {
+        // 三帧时长分别为10、30、60毫秒
+        long[] frameEnds = {10 * MILLIS, 40 * MILLIS, 100 * MILLIS};
+        long cycle = 100 * MILLIS;
+        assertEquals(0, FrameClock.getFrameAt(9 * MILLIS, frameEnds, cycle));
+        assertEquals(1, FrameClock.getFrameAt(10 * MILLIS, frameEnds, cycle));
+        assertEquals(1, FrameClock.getFrameAt(39 * MILLIS, frameEnds, cycle));
+        assertEquals(2, FrameClock.getFrameAt(40 * MILLIS, frameEnds, cycle));
+        assertEquals(2, FrameClock.getFrameAt(100 * MILLIS - 1, frameEnds, cycle));
+        assertEquals(0, FrameClock.getFrameStart(0, frameEnds, cycle));
+        assertEquals(10 * MILLIS, FrameClock.getFrameStart(1, frameEnds, cycle));
+        assertEquals(40 * MILLIS, FrameClock.getFrameStart(2, frameEnds, cycle));
+    }
+
+    @Test
+    public void wrapsAroundCycle() {
+        long[] frameEnds = {10 * MILLIS, 40 * MILLIS, 100 * MILLIS};
+        long cycle = 100 * MILLIS;
+        assertEquals(3, FrameClock.getFrameAt(100 * MILLIS, frameEnds, cycle));
+        assertEquals(4, FrameClock.getFrameAt(115 * MILLIS, frameEnds, cycle));
+        assertEquals(8, FrameClock.getFrameAt(250 * MILLIS, frameEnds, cycle));
+        assertEquals(100 * MILLIS, FrameClock.getFrameStart(3, frameEnds, cycle));
+        assertEquals(240 * MILLIS, FrameClock.getFrameStart(8, frameEnds, cycle));
+    }
+
+    @Test
+    public void frameStartMatchesLookup() {
+        long[] frameEnds = {16 * MILLIS, 50 * MILLIS, 51 * MILLIS, 90 * MILLIS};
+        long cycle = 90 * MILLIS;
+        for (long frame = 0; frame < 20; frame++) {
+            long start = FrameClock.getFrameStart(frame, frameEnds, cycle);
+            assertEquals(frame, FrameClock.getFrameAt(start, frameEnds, cycle));
+            if (start > 0) {
+                assertEquals(frame - 1, FrameClock.getFrameAt(start - 1, frameEnds, cycle));
+            }
+        }
+    }
+}
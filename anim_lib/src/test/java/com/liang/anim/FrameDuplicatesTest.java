@@ -0,0 +1,107 @@
+package com.liang.anim;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FrameDuplicatesTest {
+    private static final String KEY = "assets:refresh";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void loadReturnsNullWhenNotSaved() {
+        assertNull(FrameDuplicates.load(mContext, KEY, 4));
+    }
+
+    @Test
+    public void saveAndLoad() {
+        int[] firstIndexes = {0, 0, 2, 2, 0};
+        FrameDuplicates.save(mContext, KEY, firstIndexes);
+        assertArrayEquals(firstIndexes, FrameDuplicates.load(mContext, KEY, firstIndexes.length));
+    }
+
+    @Test
+    public void saveAndLoadWithoutDuplicates() {
+        FrameDuplicates.save(mContext, KEY, new int[]{0, 1, 2});
+        assertArrayEquals(new int[]{0, 1, 2}, FrameDuplicates.load(mContext, KEY, 3));
+    }
+
+    @Test
+    public void loadRejectsInvalidValue() {
+        // 第一次出现的下标必须在当前帧之前
+        putRaw("1:3");
+        assertNull(FrameDuplicates.load(mContext, KEY, 4));
+        // 帧数减少后保存的下标越界
+        putRaw("5:0");
+        assertNull(FrameDuplicates.load(mContext, KEY, 4));
+        putRaw("x");
+        assertNull(FrameDuplicates.load(mContext, KEY, 4));
+    }
+
+    @Test
+    public void hasDuplicates() {
+        assertFalse(FrameDuplicates.hasDuplicates(new int[]{0, 1, 2}));
+        assertTrue(FrameDuplicates.hasDuplicates(new int[]{0, 1, 0}));
+    }
+
+    @Test
+    public void inspectorMapsIdenticalFramesToFirst() {
+        FrameDuplicates.Inspector inspector = new FrameDuplicates.Inspector(4);
+        inspector.inspect(0, newBitmap(Color.RED));
+        inspector.inspect(1, newBitmap(Color.BLUE));
+        inspector.inspect(2, newBitmap(Color.RED));
+        inspector.inspect(3, newBitmap(Color.BLUE));
+        assertArrayEquals(new int[]{0, 1, 0, 1}, inspector.getResult());
+    }
+
+    @Test
+    public void inspectorKeepsFailedFrames() {
+        FrameDuplicates.Inspector inspector = new FrameDuplicates.Inspector(3);
+        inspector.inspect(0, newBitmap(Color.RED));
+        inspector.inspect(1, null);
+        inspector.inspect(2, newBitmap(Color.RED));
+        assertArrayEquals(new int[]{0, 1, 0}, inspector.getResult());
+    }
+
+    @Test
+    public void inspectSameAsUsesCanonicalIndex() {
+        FrameDuplicates.Inspector inspector = new FrameDuplicates.Inspector(4);
+        inspector.inspect(0, newBitmap(Color.RED));
+        inspector.inspect(1, newBitmap(Color.RED));
+        // 第3帧与第2帧标识相同，应与第2帧一起对应到第1帧
+        inspector.inspectSameAs(2, 1);
+        inspector.inspect(3, newBitmap(Color.BLUE));
+        assertArrayEquals(new int[]{0, 0, 0, 3}, inspector.getResult());
+    }
+
+    private void putRaw(String value) {
+        mContext.getSharedPreferences("sequence_frame_duplicates", Context.MODE_PRIVATE).edit()
+                .putString(KEY, value).commit();
+    }
+
+    private static Bitmap newBitmap(int color) {
+        Bitmap bitmap = Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        return bitmap;
+    }
+}
@@ -0,0 +1,43 @@
+package com.liang.anim;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NaturalOrderTest {
+    private final NaturalOrder mOrder = NaturalOrder.getInstance();
+
+    @Test
+    public void comparesNumbersByValue() {
+        assertTrue(mOrder.compare("frame_2.png", "frame_10.png") < 0);
+        assertTrue(mOrder.compare("frame_10.png", "frame_2.png") > 0);
+        assertTrue(mOrder.compare("frame_99.png", "frame_100.png") < 0);
+    }
+
+    @Test
+    public void ignoresLeadingZeros() {
+        assertEquals(0, mOrder.compare("frame_007.png", "frame_7.png"));
+        assertTrue(mOrder.compare("frame_01.png", "frame_2.png") < 0);
+        assertTrue(mOrder.compare("frame_000.png", "frame_1.png") < 0);
+    }
+
+    @Test
+    public void comparesTextByCharacter() {
+        assertTrue(mOrder.compare("a_1.png", "b_1.png") < 0);
+        assertTrue(mOrder.compare("frame.png", "frame_1.png") < 0);
+        assertTrue(mOrder.compare("frame_1", "frame_1.png") < 0);
+        assertEquals(0, mOrder.compare("frame_1.png", "frame_1.png"));
+    }
+
+    @Test
+    public void sortsFrameNames() {
+        String[] names = {"frame_10.webp", "frame_1.webp", "frame_2.webp", "frame_0.webp", "frame_20.webp"};
+        Arrays.sort(names, mOrder);
+        assertArrayEquals(new Object[]{"frame_0.webp", "frame_1.webp", "frame_2.webp", "frame_10.webp",
+                "frame_20.webp"}, names);
+    }
+}
@@ -0,0 +1,134 @@
+package com.liang.anim;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ZipFrameSourceTest {
+    private static final byte[] DATA = "frame".getBytes();
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void listsImagesInFolderInNaturalOrder() throws IOException {
+        File file = newZip(null, "frames/frame_10.png", "frames/frame_2.webp", "frames/frame_1.PNG",
+                "frames/readme.txt", "frames/sub/frame_3.png", "frame_0.png", "frames/");
+        ZipFrameSource source = ZipFrameSource.open(file, "frames");
+        try {
+            String prefix = "zip:" + file.getAbsolutePath() + "@" + file.lastModified() + "!";
+            assertEquals(3, source.getFrameCount());
+            assertEquals(prefix + "frames/frame_1.PNG", source.getFrameKey(0));
+            assertEquals(prefix + "frames/frame_2.webp", source.getFrameKey(1));
+            assertEquals(prefix + "frames/frame_10.png", source.getFrameKey(2));
+            assertEquals("zip:" + file.getAbsolutePath() + "@" + file.lastModified() + "/" + file.length() + "!frames/",
+                    source.getName());
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void listsImagesInRoot() throws IOException {
+        File file = newZip(null, "frames/frame_1.png", "frame_1.jpg", "frame_0.jpeg");
+        ZipFrameSource source = ZipFrameSource.open(file);
+        try {
+            assertEquals(2, source.getFrameCount());
+            assertTrue(source.getFrameKey(0).endsWith("!frame_0.jpeg"));
+            assertTrue(source.getFrameKey(1).endsWith("!frame_1.jpg"));
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void findsEndRecordBeforeComment() throws IOException {
+        File file = newZip("packed by anim_packer", "frame_1.png", "frame_2.png");
+        ZipFrameSource source = ZipFrameSource.open(file);
+        try {
+            assertEquals(2, source.getFrameCount());
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void rejectsInvalidFile() throws IOException {
+        File small = mFolder.newFile("small.zip");
+        write(small, "PK".getBytes());
+        assertOpenFails(small);
+        File text = mFolder.newFile("text.zip");
+        write(text, "this is not a zip file, only some text".getBytes());
+        assertOpenFails(text);
+    }
+
+    private static void assertOpenFails(File file) {
+        try {
+            ZipFrameSource.open(file).close();
+            fail("opened " + file.getName());
+        } catch (IOException e) {
+            // 预期打开失败
+        }
+    }
+
+    /**
+     * 交替使用stored和deflated两种方式写入条目，以“/”结尾的为文件夹
+     */
+    private File newZip(String comment, String... names) throws IOException {
+        File file = File.createTempFile("frames", ".zip", mFolder.getRoot());
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < names.length; i++) {
+                ZipEntry entry = new ZipEntry(names[i]);
+                boolean isFolder = names[i].endsWith("/");
+                if (i % 2 == 0 || isFolder) {
+                    byte[] data = isFolder ? new byte[0] : DATA;
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCompressedSize(data.length);
+                    entry.setCrc(crc.getValue());
+                    out.putNextEntry(entry);
+                    out.write(data);
+                } else {
+                    entry.setMethod(ZipEntry.DEFLATED);
+                    out.putNextEntry(entry);
+                    out.write(DATA);
+                }
+                out.closeEntry();
+            }
+            if (comment != null) {
+                out.setComment(comment);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.liang.anim.packer;
+
+import com.liang.anim.NaturalOrder;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 序列帧文件夹工具，列出ImageIO可读取的图片并按文件名中的数字自然排序，frame_2排在frame_10之前
+ */
+final class FrameFiles {
+    private FrameFiles() {
+    }
+
+    /**
+     * 列出文件夹中的序列帧图片
+     *
+     * @param folder 序列帧文件夹
+     * @return 按文件名自然排序的图片
+     */
+    static List<File> list(File folder) throws IOException {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            throw new IOException(folder + " is not a directory");
+        }
+        Set<String> suffixes = new HashSet<>();
+        for (String suffix : ImageIO.getReaderFileSuffixes()) {
+            suffixes.add(suffix.toLowerCase(Locale.US));
+        }
+        List<File> frames = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            int dot = name.lastIndexOf('.');
+            if (file.isFile() && dot > 0 && suffixes.contains(name.substring(dot + 1).toLowerCase(Locale.US))) {
+                frames.add(file);
+            }
+        }
+        Collections.sort(frames, new Comparator<File>() {
+            @Override
+            public int compare(File left, File right) {
+                return NaturalOrder.getInstance().compare(left.getName(), right.getName());
+            }
+        });
+        if (frames.isEmpty()) {
+            throw new IOException("No readable images in " + folder + ", supported: "
+                    + Arrays.toString(ImageIO.getReaderFileSuffixes()));
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,153 @@
+package com.liang.anim.packer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * 裁剪序列帧的透明边框，每帧只保留不透明区域，输出裁剪后的PNG和atlas.json索引（格式见anim_lib中FrameAtlas），
+ * 输出文件夹放到Assets中直接通过SequenceFrameView.setAnimAssets播放，解码、内存和绘制面积都只与不透明区域相关。
+ * 用法：
+ * <pre>
+ * java -cp anim_packer.jar com.liang.anim.packer.FrameTrimmer &lt;序列帧文件夹&gt; &lt;输出文件夹&gt; [--padding 像素]
+ * </pre>
+ */
+public final class FrameTrimmer {
+    static final String INDEX_FILE_NAME = "atlas.json";
+    static final int EMPTY_FRAME = -1;
+
+    private FrameTrimmer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: FrameTrimmer <frame folder> <output folder> [--padding px]");
+            System.exit(1);
+        }
+        int padding = 0;
+        for (int i = 2; i < args.length; i++) {
+            if ("--padding".equals(args[i]) && i + 1 < args.length) {
+                padding = Integer.parseInt(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        File output = new File(args[1]);
+        long[] areas = trim(new File(args[0]), output, padding);
+        System.out.println("Trimmed " + output + ": " + areas[1] + " of " + areas[0] + " pixels kept ("
+                + (areas[0] == 0 ? 0 : areas[1] * 100 / areas[0]) + "%)");
+    }
+
+    /**
+     * 裁剪序列帧文件夹
+     *
+     * @param folder  序列帧文件夹，图片按文件名自然排序，尺寸必须一致
+     * @param output  输出文件夹
+     * @param padding 不透明区域向外保留的透明像素，缩放绘制时避免边缘被截断
+     * @return 裁剪前后的总像素数
+     */
+    public static long[] trim(File folder, File output, int padding) throws IOException {
+        List<File> frames = FrameFiles.list(folder);
+        if (!output.isDirectory() && !output.mkdirs()) {
+            throw new IOException("Unable to create " + output);
+        }
+        int width = 0;
+        int height = 0;
+        long totalArea = 0;
+        long trimmedArea = 0;
+        StringBuilder images = new StringBuilder();
+        StringBuilder entries = new StringBuilder();
+        int imageCount = 0;
+        for (int i = 0; i < frames.size(); i++) {
+            BufferedImage image = ImageIO.read(frames.get(i));
+            if (image == null) {
+                throw new IOException("Unable to read " + frames.get(i));
+            }
+            if (i == 0) {
+                width = image.getWidth();
+                height = image.getHeight();
+            } else if (image.getWidth() != width || image.getHeight() != height) {
+                throw new IOException(frames.get(i) + " is " + image.getWidth() + "x" + image.getHeight()
+                        + ", expected " + width + "x" + height);
+            }
+            totalArea += (long) width * height;
+            if (i > 0) {
+                entries.append(",\n");
+            }
+            int[] bounds = opaqueBounds(image);
+            if (bounds == null) {
+                entries.append("    {\"image\": ").append(EMPTY_FRAME).append('}');
+                continue;
+            }
+            int left = Math.max(0, bounds[0] - padding);
+            int top = Math.max(0, bounds[1] - padding);
+            int right = Math.min(width, bounds[2] + padding);
+            int bottom = Math.min(height, bounds[3] + padding);
+            String file = String.format("frame_%04d.png", i);
+            BufferedImage trimmed = image.getSubimage(left, top, right - left, bottom - top);
+            if (!ImageIO.write(trimmed, "png", new File(output, file))) {
+                throw new IOException("Unable to write " + file);
+            }
+            trimmedArea += (long) (right - left) * (bottom - top);
+            if (imageCount > 0) {
+                images.append(",\n");
+            }
+            images.append("    {\"file\": \"").append(file).append("\", \"width\": ").append(right - left)
+                    .append(", \"height\": ").append(bottom - top).append('}');
+            entries.append("    {\"image\": ").append(imageCount).append(", \"ox\": ").append(left)
+                    .append(", \"oy\": ").append(top).append('}');
+            imageCount++;
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(output, INDEX_FILE_NAME)), "UTF-8");
+        try {
+            writer.write("{\n  \"width\": " + width + ", \"height\": " + height + ",\n");
+            writer.write("  \"images\": [\n" + images + "\n  ],\n");
+            writer.write("  \"frames\": [\n" + entries + "\n  ]\n}\n");
+        } finally {
+            writer.close();
+        }
+        return new long[]{totalArea, trimmedArea};
+    }
+
+    /**
+     * 计算透明度不为0的像素的包围区域
+     *
+     * @return left、top、right、bottom，完全透明时返回null
+     */
+    static int[] opaqueBounds(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (!image.getColorModel().hasAlpha()) {
+            return new int[]{0, 0, width, height};
+        }
+        int left = width;
+        int top = height;
+        int right = 0;
+        int bottom = 0;
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int x = 0;
+            while (x < width && (row[x] >>> 24) == 0) {
+                x++;
+            }
+            if (x == width) {
+                continue;
+            }
+            int end = width - 1;
+            while (end > x && (row[end] >>> 24) == 0) {
+                end--;
+            }
+            left = Math.min(left, x);
+            right = Math.max(right, end + 1);
+            top = Math.min(top, y);
+            bottom = y + 1;
+        }
+        return right == 0 ? null : new int[]{left, top, right, bottom};
+    }
+}
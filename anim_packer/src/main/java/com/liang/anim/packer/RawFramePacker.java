@@ -0,0 +1,156 @@
+package com.liang.anim.packer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * 把序列帧文件夹打包为预解码容器（.sqf），格式与anim_lib中RawFrameContainer一致：
+ * <pre>
+ * magic "SQFR" | version | width | height | config | frameCount | duration | reserved | offsets[frameCount] | pixels
+ * </pre>
+ * 用法：
+ * <pre>
+ * java -jar anim_packer.jar &lt;序列帧文件夹&gt; &lt;输出文件.sqf&gt; [--rgb565] [--duration 毫秒]
+ * </pre>
+ * 打包后的文件放到Assets中时需要在app的build.gradle中配置aaptOptions { noCompress "sqf" }
+ */
+public final class RawFramePacker {
+    static final int MAGIC = 0x52465153;
+    static final int VERSION = 1;
+    static final int CONFIG_ARGB_8888 = 1;
+    static final int CONFIG_RGB_565 = 2;
+    static final int HEADER_SIZE = 32;
+
+    private RawFramePacker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: RawFramePacker <frame folder> <output.sqf> [--rgb565] [--duration ms]");
+            System.exit(1);
+        }
+        boolean rgb565 = false;
+        int duration = 0;
+        for (int i = 2; i < args.length; i++) {
+            if ("--rgb565".equals(args[i])) {
+                rgb565 = true;
+            } else if ("--duration".equals(args[i]) && i + 1 < args.length) {
+                duration = Integer.parseInt(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        File output = new File(args[1]);
+        int frameCount = pack(new File(args[0]), output, rgb565, duration);
+        System.out.println("Packed " + frameCount + " frames into " + output + " (" + output.length() + " bytes)");
+    }
+
+    /**
+     * 打包序列帧文件夹
+     *
+     * @param folder   序列帧文件夹，图片按文件名自然排序
+     * @param output   输出文件
+     * @param rgb565   是否使用RGB_565，只适用于不透明的序列帧
+     * @param duration 每帧时长，毫秒，0表示由控件决定
+     * @return 打包的帧数
+     */
+    public static int pack(File folder, File output, boolean rgb565, int duration) throws IOException {
+        List<File> frames = FrameFiles.list(folder);
+        BufferedImage first = read(frames.get(0));
+        int width = first.getWidth();
+        int height = first.getHeight();
+        int bytesPerPixel = rgb565 ? 2 : 4;
+        long frameSize = (long) width * height * bytesPerPixel;
+        long dataOffset = HEADER_SIZE + 8L * frames.size();
+
+        RandomAccessFile file = new RandomAccessFile(output, "rw");
+        try {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate((int) dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height)
+                    .putInt(rgb565 ? CONFIG_RGB_565 : CONFIG_ARGB_8888).putInt(frames.size()).putInt(duration)
+                    .putInt(0);
+            for (int i = 0; i < frames.size(); i++) {
+                header.putLong(dataOffset + frameSize * i);
+            }
+            header.flip();
+            channel.write(header);
+
+            ByteBuffer pixels = ByteBuffer.allocate((int) frameSize).order(ByteOrder.LITTLE_ENDIAN);
+            int[] row = new int[width];
+            for (int i = 0; i < frames.size(); i++) {
+                BufferedImage image = i == 0 ? first : read(frames.get(i));
+                if (image.getWidth() != width || image.getHeight() != height) {
+                    throw new IOException(frames.get(i) + " is " + image.getWidth() + "x" + image.getHeight()
+                            + ", expected " + width + "x" + height);
+                }
+                pixels.clear();
+                boolean translucent = false;
+                for (int y = 0; y < height; y++) {
+                    image.getRGB(0, y, width, 1, row, 0, width);
+                    for (int x = 0; x < width; x++) {
+                        int color = row[x];
+                        if (rgb565) {
+                            translucent |= (color >>> 24) != 0xff;
+                            pixels.putShort(toRgb565(color));
+                        } else {
+                            putPremultipliedRgba(pixels, color);
+                        }
+                    }
+                }
+                if (translucent) {
+                    System.err.println("Warning: " + frames.get(i) + " has transparent pixels, dropped by RGB_565");
+                }
+                pixels.flip();
+                while (pixels.hasRemaining()) {
+                    channel.write(pixels);
+                }
+            }
+        } finally {
+            file.close();
+        }
+        return frames.size();
+    }
+
+    private static BufferedImage read(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unable to read " + file);
+        }
+        return image;
+    }
+
+    /**
+     * 与Android ARGB_8888内存布局一致：预乘透明度，按R、G、B、A字节顺序存放
+     */
+    static void putPremultipliedRgba(ByteBuffer buffer, int color) {
+        int alpha = color >>> 24;
+        buffer.put((byte) multiply(alpha, (color >> 16) & 0xff));
+        buffer.put((byte) multiply(alpha, (color >> 8) & 0xff));
+        buffer.put((byte) multiply(alpha, color & 0xff));
+        buffer.put((byte) alpha);
+    }
+
+    static short toRgb565(int color) {
+        int red = (color >> 16) & 0xff;
+        int green = (color >> 8) & 0xff;
+        int blue = color & 0xff;
+        return (short) (((red >> 3) << 11) | ((green >> 2) << 5) | (blue >> 3));
+    }
+
+    /**
+     * 与Skia的SkMulDiv255Round相同的取整方式
+     */
+    private static int multiply(int a, int b) {
+        int product = a * b + 128;
+        return (product + (product >> 8)) >> 8;
+    }
+}